@@ -1,15 +1,22 @@
 #!/usr/bin/env python
 
 # This script is for stress-testing a SONAR server.  It starts a number of
-# subprocesses, which each connect to the SONAR test server.
+# subprocesses, which each connect to the SONAR test server.  The number of
+# clients can be given as an argument (default 15).  To compare transports,
+# start the test server with -Dsonar.transport=nio (or socket).
 
 import subprocess
+import sys
 import time
 
 args = ['java', '-jar', 'sonar-test-@@VERSION@@.jar', '-c']
 processes = []
+n_clients = 15
+if len(sys.argv) > 1:
+	n_clients = int(sys.argv[1])
 
-for i in range(15):
+start = time.time()
+for i in range(n_clients):
 	processes.append(subprocess.Popen(args))
 	time.sleep(0.2)
 
@@ -19,3 +26,4 @@ for p in processes:
 	if rc == 0:
 		success = success + 1
 print 'SONAR client success %d of %d' % (success, len(processes))
+print 'Elapsed time %.1f seconds' % (time.time() - start)
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2010  Minnesota Department of Transportation
+ * Copyright (C) 2010-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -59,6 +59,15 @@ public class ByteBufferOutputStream extends OutputStream {
 		return buffer;
 	}
 
+	/** Get the current byte buffer, expanding it if necessary.
+	 * @param n_bytes Number of bytes which must be remaining.
+	 * @return Byte buffer with at least n_bytes remaining. */
+	public ByteBuffer getBuffer(int n_bytes) {
+		if(buffer.remaining() < n_bytes)
+			expand(n_bytes);
+		return buffer;
+	}
+
 	/** Write a single byte to the output stream */
 	public void write(int b) {
 		if(buffer.remaining() < 1)
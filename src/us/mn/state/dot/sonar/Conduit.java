@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2015  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -28,7 +28,7 @@ abstract public class Conduit {
 	abstract public String getName();
 
 	/** Flag to indicate that the conduit is connected */
-	protected boolean connected = false;
+	protected volatile boolean connected = false;
 
 	/** Test if the conduit is connected */
 	public boolean isConnected() {
@@ -49,6 +49,12 @@ abstract public class Conduit {
 	/** Disable writing data to the conduit */
 	abstract protected void disableWrite();
 
+	/** Resume SSL handshaking after delegated tasks have completed.
+	 * This is called on the thread which performed the tasks. */
+	protected void resumeHandshake() {
+		// only needed if tasks are not run inline
+	}
+
 	/** Handle a LOGIN message */
 	public void doLogin(List<String> p) throws SonarException {
 		throw ProtocolError.INVALID_MESSAGE_CODE;
@@ -90,4 +96,9 @@ abstract public class Conduit {
 	public void doShow(List<String> p) throws SonarException {
 		throw ProtocolError.INVALID_MESSAGE_CODE;
 	}
+
+	/** Handle a JOURNAL message */
+	public void doJournal(List<String> p) throws SonarException {
+		throw ProtocolError.INVALID_MESSAGE_CODE;
+	}
 }
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,17 +14,22 @@
  */
 package us.mn.state.dot.sonar;
 
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * A message decoder provides a Java API for decoding messages from the SONAR
  * wire protocol.
  *
+ * Both separators (RECORD_SEP and UNIT_SEP) are encoded as single bytes in
+ * UTF-8, and no byte of a multi-byte UTF-8 sequence can be mistaken for one
+ * of them.  This allows the incoming buffer to be scanned for separators
+ * directly, decoding each parameter with one bulk UTF-8 conversion.
+ *
  * @author Douglas Lau
  */
 public class MessageDecoder {
@@ -32,35 +37,40 @@ public class MessageDecoder {
 	/** Everything on the wire is encoded to UTF-8 */
 	static protected final Charset UTF8 = Charset.forName("UTF-8");
 
+	/** Record separator byte */
+	static private final byte RECORD_SEP = (byte)Message.RECORD_SEP.code;
+
+	/** Unit separator byte */
+	static private final byte UNIT_SEP = (byte)Message.UNIT_SEP.code;
+
+	/** Minimum capacity of partial parameter buffer */
+	static private final int PARTIAL_CAPACITY = 256;
+
 	/** Byte buffer to store incoming SONAR data */
 	protected final ByteBuffer app_in;
 
-	/** Byte buffer input stream */
-	protected final ByteBufferInputStream in_buf;
+	/** Bytes of a parameter which is split across reads.  These are
+	 * copied out of app_in so it can be completely drained. */
+	private byte[] partial = new byte[0];
 
-	/** Char reader input stream */
-	protected InputStreamReader reader;
+	/** Number of valid bytes in partial parameter buffer */
+	private int n_partial = 0;
 
-	/** String builder to build decoded parameters */
-	protected final StringBuilder m_buf = new StringBuilder();
+	/** List of decoded parameters (reused for each message) */
+	protected final ArrayList<String> params = new ArrayList<String>();
 
-	/** List of decoded parameters */
-	protected LinkedList<String> params = new LinkedList<String>();
+	/** Flag indicating the parameter list is complete */
+	private boolean complete = false;
 
 	/** Create a new SONAR message decoder */
 	public MessageDecoder(ByteBuffer in) throws IOException {
 		app_in = in;
-		in_buf = new ByteBufferInputStream(in);
-		reader = new InputStreamReader(in_buf, UTF8);
-	}
-
-	/** Complete the current parameter */
-	protected void completeParameter() {
-		params.add(m_buf.toString());
-		m_buf.setLength(0);
 	}
 
-	/** Decode messages */
+	/** Decode one message.  The returned list is only valid until the
+	 * next call to decode.
+	 * @return List of message parameters, or null if no complete message
+	 *         is available. */
 	public List<String> decode() throws IOException {
 		try {
 			app_in.flip();
@@ -71,26 +81,88 @@ public class MessageDecoder {
 		}
 	}
 
-	/** Decode messages */
-	protected List<String> _decode() throws IOException {
-		while(reader.ready()) {
-			int ch = reader.read();
-			if(ch < 0)
-				break;
-			char c = (char)ch;
-			if(c == Message.RECORD_SEP.code) {
-				completeParameter();
-				List<String> p = params;
-				params = new LinkedList<String>();
-				return p;
-			} else if(c == Message.UNIT_SEP.code)
-				completeParameter();
-			else
-				m_buf.append(c);
+	/** Decode one message */
+	protected List<String> _decode() {
+		if(complete) {
+			params.clear();
+			complete = false;
+		}
+		if(app_in.hasArray())
+			return decodeArray();
+		else
+			return decodeBuffer();
+	}
+
+	/** Decode one message from a buffer backed by an array */
+	private List<String> decodeArray() {
+		byte[] buf = app_in.array();
+		int off = app_in.arrayOffset();
+		int start = off + app_in.position();
+		int end = off + app_in.limit();
+		for(int i = start; i < end; i++) {
+			byte b = buf[i];
+			if(b == UNIT_SEP || b == RECORD_SEP) {
+				completeParameter(buf, start, i - start);
+				start = i + 1;
+				if(b == RECORD_SEP) {
+					app_in.position(start - off);
+					complete = true;
+					return params;
+				}
+			}
 		}
+		appendPartial(buf, start, end - start);
+		app_in.position(end - off);
 		return null;
 	}
 
+	/** Decode one message from a buffer without a backing array */
+	private List<String> decodeBuffer() {
+		int start = app_in.position();
+		int end = app_in.limit();
+		for(int i = start; i < end; i++) {
+			byte b = app_in.get(i);
+			if(b == UNIT_SEP || b == RECORD_SEP) {
+				byte[] p = new byte[i - start];
+				app_in.get(p);
+				completeParameter(p, 0, p.length);
+				app_in.get();
+				start = i + 1;
+				if(b == RECORD_SEP) {
+					complete = true;
+					return params;
+				}
+			}
+		}
+		byte[] p = new byte[end - start];
+		app_in.get(p);
+		appendPartial(p, 0, p.length);
+		return null;
+	}
+
+	/** Complete the current parameter */
+	private void completeParameter(byte[] buf, int off, int len) {
+		if(n_partial > 0) {
+			appendPartial(buf, off, len);
+			params.add(new String(partial, 0, n_partial, UTF8));
+			n_partial = 0;
+		} else
+			params.add(new String(buf, off, len, UTF8));
+	}
+
+	/** Append bytes to the partial parameter buffer */
+	private void appendPartial(byte[] buf, int off, int len) {
+		if(len > 0) {
+			int n = n_partial + len;
+			if(n > partial.length) {
+				partial = Arrays.copyOf(partial,
+					Math.max(n * 2, PARTIAL_CAPACITY));
+			}
+			System.arraycopy(buf, off, partial, n_partial, len);
+			n_partial = n;
+		}
+	}
+
 	/** Debug the SONAR parameters */
 	public void debugParameters() {
 		StringBuilder b = new StringBuilder();
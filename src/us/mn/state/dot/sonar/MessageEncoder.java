@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,13 +15,13 @@
 package us.mn.state.dot.sonar;
 
 import java.io.IOException;
-import java.io.OutputStreamWriter;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
  * A message encoder provides a Java API for encoding messages to the SONAR
- * wire protocol.
+ * wire protocol.  Messages are encoded to UTF-8 directly into the output
+ * buffer, without any intermediate strings or char buffers.
  *
  * @author Douglas Lau
  */
@@ -30,58 +30,201 @@ public class MessageEncoder {
 	/** Everything on the wire is encoded to UTF-8 */
 	static protected final Charset UTF8 = Charset.forName("UTF-8");
 
-	/** Strip message delimiters and terminators from a string */
-	static protected String stripString(String s) {
-		s = s.replace(Message.UNIT_SEP.code, ' ');
-		return s.replace(Message.RECORD_SEP.code, ' ');
+	/** Replacement for unpaired surrogates (same as the UTF-8 encoder) */
+	static private final byte REPLACEMENT = (byte)'?';
+
+	/** Check if a char is a message delimiter or terminator */
+	static private boolean isSeparator(char c) {
+		return c == Message.UNIT_SEP.code ||
+		       c == Message.RECORD_SEP.code;
+	}
+
+	/** Get the number of bytes needed to encode a string to UTF-8 */
+	static private int utf8Length(String s) {
+		int len = s.length();
+		int n_bytes = len;
+		for(int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if(c >= 0x80) {
+				if(c < 0x800)
+					n_bytes++;
+				else if(Character.isHighSurrogate(c) &&
+				        i + 1 < len &&
+				        Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+					// 4 bytes for 2 chars
+					n_bytes += 2;
+					i++;
+				} else if(Character.isSurrogate(c))
+					continue;
+				else
+					n_bytes += 2;
+			}
+		}
+		return n_bytes;
+	}
+
+	/** Encode a string to UTF-8.
+	 * @param s String to encode.
+	 * @param strip Flag to replace separators with spaces.
+	 * @param b Byte array to store encoded string.
+	 * @param pos Position in byte array.
+	 * @return Position after encoded string. */
+	static private int encodeString(String s, boolean strip, byte[] b,
+		int pos)
+	{
+		int len = s.length();
+		int i = 0;
+		// ASCII fast path
+		for(; i < len; i++) {
+			char c = s.charAt(i);
+			if(c >= 0x80)
+				break;
+			if(strip && isSeparator(c))
+				c = ' ';
+			b[pos++] = (byte)c;
+		}
+		for(; i < len; i++) {
+			char c = s.charAt(i);
+			if(c < 0x80) {
+				if(strip && isSeparator(c))
+					c = ' ';
+				b[pos++] = (byte)c;
+			} else if(c < 0x800) {
+				b[pos++] = (byte)(0xC0 | (c >> 6));
+				b[pos++] = (byte)(0x80 | (c & 0x3F));
+			} else if(Character.isSurrogate(c)) {
+				if(Character.isHighSurrogate(c) && i + 1 < len &&
+				   Character.isLowSurrogate(s.charAt(i + 1)))
+				{
+					int cp = Character.toCodePoint(c,
+						s.charAt(++i));
+					b[pos++] = (byte)(0xF0 | (cp >> 18));
+					b[pos++] = (byte)(0x80 |
+						((cp >> 12) & 0x3F));
+					b[pos++] = (byte)(0x80 |
+						((cp >> 6) & 0x3F));
+					b[pos++] = (byte)(0x80 | (cp & 0x3F));
+				} else
+					b[pos++] = REPLACEMENT;
+			} else {
+				b[pos++] = (byte)(0xE0 | (c >> 12));
+				b[pos++] = (byte)(0x80 | ((c >> 6) & 0x3F));
+				b[pos++] = (byte)(0x80 | (c & 0x3F));
+			}
+		}
+		return pos;
+	}
+
+	/** Get the number of bytes needed to encode a message */
+	static private int messageLength(String name, String[] params) {
+		// message code and record separator
+		int n_bytes = 2;
+		if(name != null) {
+			n_bytes += 1 + utf8Length(name);
+			if(params != null) {
+				for(String p: params)
+					n_bytes += 1 + utf8Length(p);
+			}
+		}
+		return n_bytes;
+	}
+
+	/** Encode one message into a byte array.
+	 * @param m Message code.
+	 * @param name Name (may be null).
+	 * @param params Parameters (may be null).
+	 * @param b Byte array to store encoded message.
+	 * @param pos Position in byte array.
+	 * @return Position after encoded message. */
+	static private int encodeBytes(Message m, String name, String[] params,
+		byte[] b, int pos)
+	{
+		b[pos++] = (byte)m.code;
+		if(name != null) {
+			b[pos++] = (byte)Message.UNIT_SEP.code;
+			pos = encodeString(name, false, b, pos);
+			if(params != null) {
+				for(String p: params) {
+					b[pos++] = (byte)Message.UNIT_SEP.code;
+					pos = encodeString(p, true, b, pos);
+				}
+			}
+		}
+		b[pos++] = (byte)Message.RECORD_SEP.code;
+		return pos;
+	}
+
+	/** Encode one message into a new byte array.  This allows a message
+	 * to be encoded once and then written to many encoders.  The array
+	 * must not be modified after it has been written.
+	 * @param m Message code.
+	 * @param name Name (may be null).
+	 * @param params Parameters (may be null).
+	 * @return Encoded message. */
+	static public byte[] encodeMessage(Message m, String name,
+		String[] params)
+	{
+		byte[] b = new byte[messageLength(name, params)];
+		encodeBytes(m, name, params, b, 0);
+		return b;
 	}
 
 	/** Byte buffer output stream */
 	protected final ByteBufferOutputStream out_buf;
 
-	/** Char writer output stream */
-	protected final OutputStreamWriter writer;
-
 	/** Create a new SONAR message encoder */
 	public MessageEncoder(int n_bytes) throws IOException {
 		out_buf = new ByteBufferOutputStream(n_bytes);
-		writer = new OutputStreamWriter(out_buf, UTF8);
 	}
 
 	/** Encode one message with the given code.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called by the owner of the encoder. */
 	public void encode(Message m) throws IOException {
 		encode(m, null, null);
 	}
 
 	/** Encode one message with the given code and name.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called by the owner of the encoder. */
 	public void encode(Message m, String name) throws IOException {
 		encode(m, name, null);
 	}
 
 	/** Encode one message with the given code, name and parameters.
-	 * This may only be called on the Task Processor thread. */
+	 * Separators are replaced with spaces in parameters (not name).
+	 * This may only be called by the owner of the encoder. */
 	public void encode(Message m, String name, String[] params)
 		throws IOException
 	{
-		writer.write(m.code);
-		if(name != null) {
-			writer.write(Message.UNIT_SEP.code);
-			writer.write(name);
-			if(params != null) {
-				for(String p: params) {
-					writer.write(Message.UNIT_SEP.code);
-					writer.write(stripString(p));
-				}
-			}
-		}
-		writer.write(Message.RECORD_SEP.code);
+		ByteBuffer buf = out_buf.getBuffer(messageLength(name, params));
+		int off = buf.arrayOffset();
+		int pos = encodeBytes(m, name, params, buf.array(),
+			off + buf.position());
+		buf.position(pos - off);
+	}
+
+	/** Write one (or more) previously encoded messages.
+	 * This may only be called by the owner of the encoder.
+	 * @param msg Encoded message (from encodeMessage). */
+	public void write(byte[] msg) {
+		out_buf.write(msg, 0, msg.length);
+	}
+
+	/** Remove all encoded data from the output buffer.
+	 * @return Copy of the encoded data. */
+	public byte[] takeData() {
+		ByteBuffer buf = getBuffer();
+		buf.flip();
+		byte[] data = new byte[buf.remaining()];
+		buf.get(data);
+		compact();
+		return data;
 	}
 
-	/** Flush the encoded data */
+	/** Flush the encoded data.  Messages are encoded directly into the
+	 * output buffer, so there is nothing to flush. */
 	public void flush() throws IOException {
-		writer.flush();
+		// nothing buffered
 	}
 
 	/** Get the current output buffer */
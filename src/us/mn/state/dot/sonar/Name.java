@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2008-2009  Minnesota Department of Transportation
+ * Copyright (C) 2008-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,8 +14,13 @@
  */
 package us.mn.state.dot.sonar;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
- * A name represents a type, object or attribute in SONAR namespace.
+ * A name represents a type, object or attribute in SONAR namespace.  Names
+ * are immutable; the parts are split once, when the name is created.
+ * Names parsed from messages can be interned, so that frequently used
+ * names are only parsed once.
  *
  * @author Douglas Lau
  */
@@ -24,24 +29,85 @@ public class Name {
 	/** Name separator */
 	static public final String SEP = "/";
 
+	/** Name separator character */
+	static private final char SEP_CHAR = '/';
+
+	/** Size of intern pool (must be a power of 2) */
+	static private final int POOL_SIZE = 4096;
+
+	/** Pool of interned names.  Each path hashes to one slot, which holds
+	 * the last name interned in that slot.  The pool is bounded, and
+	 * needs no locking since names are immutable. */
+	static private final AtomicReferenceArray<Name> POOL =
+		new AtomicReferenceArray<Name>(POOL_SIZE);
+
+	/** Get an interned name for a path.  If the name is in the pool, it
+	 * is returned without being parsed again.
+	 * @param n Name path.
+	 * @return Name with the given path. */
+	static public Name intern(String n) {
+		int h = n.hashCode();
+		int i = (h ^ (h >>> 16)) & (POOL_SIZE - 1);
+		Name name = POOL.get(i);
+		if(name == null || !name.path.equals(n)) {
+			name = new Name(n);
+			POOL.set(i, name);
+		}
+		return name;
+	}
+
 	/** Name path */
 	protected final String path;
 
 	/** Name parts */
 	protected final String[] parts;
 
+	/** Type part */
+	private final String type_part;
+
+	/** Object part */
+	private final String object_part;
+
+	/** Attribute part */
+	private final String attribute_part;
+
+	/** Full object name (created when first needed) */
+	private String object_name;
+
+	/** Attribute name with no object (created when first needed) */
+	private String attribute_name;
+
 	/** Create a new name */
 	public Name(String n) {
 		path = n;
 		parts = getParts();
+		type_part = (parts.length > 0) ? parts[0] : "";
+		object_part = (parts.length > 1) ? parts[1] : "";
+		attribute_part = (parts.length > 2) ? parts[2] : "";
 	}
 
-	/** Get the parts of a name */
+	/** Get the parts of a name.  As with String.split, trailing empty
+	 * parts are dropped. */
 	protected String[] getParts() {
-		if(path.length() < 1)
+		int len = path.length();
+		while(len > 0 && path.charAt(len - 1) == SEP_CHAR)
+			len--;
+		if(len < 1)
 			return new String[0];
-		else
-			return path.split(SEP);
+		int n = 1;
+		for(int i = 0; i < len; i++) {
+			if(path.charAt(i) == SEP_CHAR)
+				n++;
+		}
+		String[] p = new String[n];
+		int start = 0;
+		for(int i = 0; i < n - 1; i++) {
+			int end = path.indexOf(SEP_CHAR, start);
+			p[i] = path.substring(start, end);
+			start = end + 1;
+		}
+		p[n - 1] = path.substring(start, len);
+		return p;
 	}
 
 	/** Create a name with a type and object */
@@ -89,38 +155,51 @@ public class Name {
 		return path;
 	}
 
+	/** Get a hash code for the name */
+	@Override
+	public int hashCode() {
+		return path.hashCode();
+	}
+
+	/** Check if the name is equal to another object */
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof Name) && path.equals(((Name)o).path);
+	}
+
 	/** Get the type part */
 	public String getTypePart() {
-		if(parts.length > 0)
-			return parts[0];
-		else
-			return "";
+		return type_part;
 	}
 
 	/** Get the object part */
 	public String getObjectPart() {
-		if(parts.length > 1)
-			return parts[1];
-		else
-			return "";
+		return object_part;
 	}
 
 	/** Get the attribute part */
 	public String getAttributePart() {
-		if(parts.length > 2)
-			return parts[2];
-		else
-			return "";
+		return attribute_part;
 	}
 
 	/** Get the full object name */
 	public String getObjectName() {
-		return getTypePart() + SEP + getObjectPart();
+		String n = object_name;
+		if(n == null) {
+			n = type_part + SEP + object_part;
+			object_name = n;
+		}
+		return n;
 	}
 
 	/** Get the attribute name with no object specified */
 	public String getAttributeName() {
-		return getTypePart() + SEP + SEP + getAttributePart();
+		String n = attribute_name;
+		if(n == null) {
+			n = type_part + SEP + SEP + attribute_part;
+			attribute_name = n;
+		}
+		return n;
 	}
 
 	/** Check if a name matches a pattern */
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,7 @@ package us.mn.state.dot.sonar;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A namespace is a mapping of names to objects.
@@ -28,6 +29,11 @@ abstract public class Namespace {
 	/** NULL REF string */
 	static private String NULL_STR = String.valueOf(Message.NULL_REF.code);
 
+	/** Registry of SONAR type names for each class.  The value is an
+	 * empty array for a class with neither SONAR_TYPE nor SONAR_TYPES. */
+	static private final ConcurrentHashMap<Class, String[]> TYPE_NAMES =
+		new ConcurrentHashMap<Class, String[]>();
+
 	/** Get the name of a SONAR type */
 	static public String typeName(Class t)
 		throws NoSuchFieldException, IllegalAccessException
@@ -46,6 +52,40 @@ abstract public class Namespace {
 		return (String [])f.get(t);
 	}
 
+	/** Lookup the SONAR type names for a class.  The names are found
+	 * once (through reflection) and then kept in a registry.
+	 * @param t Class of SONAR object (interface or implementation).
+	 * @return Type names from SONAR_TYPE or SONAR_TYPES field, or an
+	 *         empty array if neither is defined. */
+	static private String[] lookupTypeNames(Class t)
+		throws IllegalAccessException
+	{
+		String[] names = TYPE_NAMES.get(t);
+		if(names == null) {
+			names = findTypeNames(t);
+			TYPE_NAMES.putIfAbsent(t, names);
+		}
+		return names;
+	}
+
+	/** Find the SONAR type names for a class through reflection */
+	static private String[] findTypeNames(Class t)
+		throws IllegalAccessException
+	{
+		try {
+			return new String[] { typeName(t) };
+		}
+		catch(NoSuchFieldException e) {
+			// No SONAR_TYPE, check for SONAR_TYPES
+		}
+		try {
+			return typeNames(t);
+		}
+		catch(NoSuchFieldException e) {
+			return new String[0];
+		}
+	}
+
 	/** Make an array of the given class and size */
 	static private Object[] makeArray(Class t, int size) {
 		return (Object [])Array.newInstance(t, size);
@@ -105,14 +145,23 @@ abstract public class Namespace {
 	private Object unmarshallObject(Class t, String p)
 		throws ProtocolError
 	{
+		String[] names;
 		try {
-			return unmarshallObjectB(t, p);
+			names = lookupTypeNames(t);
 		}
-		catch(NoSuchFieldException e) {
+		catch(Exception e) {
+			System.err.println("SONAR: unmarshall \"" + p +
+				"\": " + e.getMessage());
+			throw ProtocolError.INVALID_PARAMETER;
+		}
+		if(names.length == 0) {
 			System.err.println("SONAR: SONAR_TYPE and " +
 				"SONAR_TYPES not defined for " + t);
 			throw ProtocolError.INVALID_PARAMETER;
 		}
+		try {
+			return unmarshallObjectB(names, p);
+		}
 		catch(Exception e) {
 			System.err.println("SONAR: unmarshall \"" + p +
 				"\": " + e.getMessage());
@@ -120,21 +169,16 @@ abstract public class Namespace {
 		}
 	}
 
-	/** Unmarshall a SONAR object reference */
-	private Object unmarshallObjectB(Class t, String p)
-		throws NoSuchFieldException, IllegalAccessException
-	{
-		try {
-			return lookupObject(typeName(t), p);
-		}
-		catch(NoSuchFieldException e) {
-			for(String typ: typeNames(t)) {
-				Object o = lookupObject(typ, p);
-				if(o != null)
-					return o;
-			}
-			return null;
+	/** Unmarshall a SONAR object reference.
+	 * @param names Possible type names of the object.
+	 * @param p Object name. */
+	private Object unmarshallObjectB(String[] names, String p) {
+		for(String typ: names) {
+			Object o = lookupObject(typ, p);
+			if(o != null)
+				return o;
 		}
+		return null;
 	}
 
 	/** Unmarshall parameter strings into one java parameter */
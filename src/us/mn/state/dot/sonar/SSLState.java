@@ -16,6 +16,7 @@ package us.mn.state.dot.sonar;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
@@ -61,12 +62,31 @@ public class SSLState {
 	/** Encoder for messages to send */
 	public final MessageEncoder encoder;
 
+	/** Executor for delegated SSL engine tasks (null to run inline) */
+	protected final Executor task_executor;
+
+	/** Flag to indicate delegated tasks are running on the executor */
+	private volatile boolean task_pending = false;
+
 	/** Create a new SONAR SSL state */
 	public SSLState(Conduit c, SSLEngine e) throws SSLException,
 		IOException
+	{
+		this(c, e, null);
+	}
+
+	/** Create a new SONAR SSL state.
+	 * @param c Conduit.
+	 * @param e SSL engine.
+	 * @param te Executor for delegated tasks, or null to run them
+	 *           inline.  When a task is run on the executor, the
+	 *           conduit is resumed after it completes. */
+	public SSLState(Conduit c, SSLEngine e, Executor te)
+		throws SSLException, IOException
 	{
 		conduit = c;
 		engine = e;
+		task_executor = te;
 		SSLSession session = engine.getSession();
 		int p_size = session.getPacketBufferSize();
 		int a_size = session.getApplicationBufferSize();
@@ -91,7 +111,7 @@ public class SSLState {
 	}
 
 	/** Read available data from network input buffer.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called by the owner of the conduit. */
 	public boolean doRead() throws SSLException {
 		doUnwrap();
 		while(doHandshake());
@@ -103,8 +123,7 @@ public class SSLState {
 		hs = engine.getHandshakeStatus();
 		switch(hs) {
 		case NEED_TASK:
-			doTask();
-			return true;
+			return doTask();
 		case NEED_WRAP:
 			doWrap();
 			return true;
@@ -115,17 +134,25 @@ public class SSLState {
 		}
 	}
 
-	/** Write data to the network output buffer.
-	 * This may only be called on the Task Processor thread. */
+	/** Write data to the network output buffer.  All encoded data is
+	 * wrapped (into full-size records, when possible) before enabling
+	 * write once.  Write is not enabled if there is nothing to write.
+	 * This may only be called by the owner of the conduit. */
 	public void doWrite() throws SSLException {
-		if(canWrite())
-			doWrap();
-		else
+		while(shouldWrite() && wrap() > 0);
+		if(hasNetData())
 			conduit.enableWrite();
 	}
 
+	/** Check if the network output buffer has data to write */
+	private boolean hasNetData() {
+		synchronized(net_out) {
+			return net_out.position() > 0;
+		}
+	}
+
 	/** Check if data should be written.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called by the owner of the conduit. */
 	public boolean shouldWrite() {
 		return encoder.hasData() && canWrite();
 	}
@@ -137,32 +164,68 @@ public class SSLState {
 		}
 	}
 
-	/** Perform a delegated SSL engine task */
-	protected void doTask() {
-		Runnable task = engine.getDelegatedTask();
-		if(task != null)
-			task.run();
+	/** Perform delegated SSL engine tasks.
+	 * @return true if handshaking can continue, false if the tasks are
+	 *         running on the task executor. */
+	protected boolean doTask() {
+		if(task_executor == null) {
+			Runnable task = engine.getDelegatedTask();
+			if(task != null)
+				task.run();
+			return true;
+		}
+		if(!task_pending) {
+			task_pending = true;
+			task_executor.execute(new Runnable() {
+				public void run() {
+					runTasks();
+				}
+			});
+		}
+		return false;
+	}
+
+	/** Run all delegated tasks, then resume the conduit.
+	 * This is called on the task executor. */
+	private void runTasks() {
+		try {
+			Runnable task = engine.getDelegatedTask();
+			while(task != null) {
+				task.run();
+				task = engine.getDelegatedTask();
+			}
+		}
+		finally {
+			task_pending = false;
+			conduit.resumeHandshake();
+		}
 	}
 
-	/** Wrap application data into SSL buffer */
+	/** Wrap application data into SSL buffer, and enable write */
 	protected void doWrap() throws SSLException {
+		wrap();
+		if(hasNetData())
+			conduit.enableWrite();
+	}
+
+	/** Wrap application data into SSL buffer.
+	 * @return Number of application bytes consumed. */
+	private int wrap() throws SSLException {
 		ssl_out.clear();
 		ByteBuffer app_out = encoder.getBuffer();
 		app_out.flip();
+		SSLEngineResult result;
 		try {
-			engine.wrap(app_out, ssl_out);
+			result = engine.wrap(app_out, ssl_out);
 		}
 		finally {
 			encoder.compact();
 		}
 		ssl_out.flip();
-		int n_bytes;
 		synchronized(net_out) {
 			net_out.put(ssl_out);
-			n_bytes = net_out.position();
 		}
-		if(n_bytes > 0)
-			conduit.enableWrite();
+		return result.bytesConsumed();
 	}
 
 	/** Unwrap SSL data into appcliation buffer */
@@ -122,6 +122,7 @@ public class Client {
 
 	/** Select and perform I/O on ready channels */
 	private void doSelect() throws IOException {
+		conduit.updateInterest();
 		selector.select();
 		Set<SelectionKey> ready = selector.selectedKeys();
 		for (SelectionKey key: ready) {
@@ -25,6 +25,7 @@ import java.nio.channels.SocketChannel;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.naming.AuthenticationException;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
@@ -117,6 +118,15 @@ class ClientConduit extends Conduit {
 	/** SSL connection state information */
 	private final SSLState state;
 
+	/** Interest ops to apply on the selector thread */
+	private volatile int interest = SelectionKey.OP_CONNECT;
+
+	/** Flag to indicate the interest ops have changed */
+	private final AtomicBoolean interest_changed = new AtomicBoolean();
+
+	/** Flag to indicate a selector wakeup is pending */
+	private final AtomicBoolean wakeup_pending = new AtomicBoolean();
+
 	/** Cache of all proxy objects */
 	private final ClientNamespace namespace;
 
@@ -281,14 +291,26 @@ class ClientConduit extends Conduit {
 	/** Enable writing data back to the client */
 	@Override
 	protected void enableWrite() {
-		key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-		key.selector().wakeup();
+		interest = SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+		interest_changed.set(true);
+		if (wakeup_pending.compareAndSet(false, true))
+			key.selector().wakeup();
 	}
 
-	/** Disable writing data back to the client */
+	/** Disable writing data back to the client.  This is only called on
+	 * the selector thread, so no wakeup is needed. */
 	@Override
 	protected void disableWrite() {
-		key.interestOps(SelectionKey.OP_READ);
+		interest = SelectionKey.OP_READ;
+		interest_changed.set(true);
+	}
+
+	/** Apply any interest change to the selection key.  This must be
+	 * called on the selector thread before each select. */
+	void updateInterest() {
+		wakeup_pending.set(false);
+		if (interest_changed.getAndSet(false) && key.isValid())
+			key.interestOps(interest);
 	}
 
 	/** Process a QUIT message from the server */
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -72,7 +72,7 @@ public class ClientNamespace extends Namespace {
 	/** Put a new object in the cache */
 	void putObject(String n) throws NamespaceError {
 		if(isAbsolute(n)) {
-			Name name = new Name(n);
+			Name name = Name.intern(n);
 			if(!name.isObject())
 				throw NamespaceError.NAME_INVALID;
 			cur_obj = getTypeCache(name).add(name.getObjectPart());
@@ -83,7 +83,7 @@ public class ClientNamespace extends Namespace {
 	/** Remove an object from the cache */
 	void removeObject(String n) throws NamespaceError {
 		if(isAbsolute(n)) {
-			Name name = new Name(n);
+			Name name = Name.intern(n);
 			if(!name.isObject())
 				throw NamespaceError.NAME_INVALID;
 			getTypeCache(name).remove(name.getObjectPart());
@@ -94,7 +94,7 @@ public class ClientNamespace extends Namespace {
 	/** Update an object attribute */
 	void updateAttribute(String n, String[] v) throws SonarException {
 		if(isAbsolute(n)) {
-			Name name = new Name(n);
+			Name name = Name.intern(n);
 			if(!name.isAttribute())
 				throw ProtocolError.WRONG_PARAMETER_COUNT;
 			TypeCache t = getTypeCache(name);
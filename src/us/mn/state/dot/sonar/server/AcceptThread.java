@@ -0,0 +1,112 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * The accept thread listens for new client connections, and assigns each
+ * one to a selector thread (round-robin).  Without selector threads, each
+ * connection uses a blocking socket transport instead.
+ *
+ * @author Douglas Lau
+ * @author agent
+ */
+public final class AcceptThread extends Thread {
+
+	/** Create and configure a server socket channel */
+	static private ServerSocketChannel createChannel(int port)
+		throws IOException
+	{
+		ServerSocketChannel c = ServerSocketChannel.open();
+		InetAddress host = InetAddress.getByAddress(new byte[4]);
+		InetSocketAddress address = new InetSocketAddress(host, port);
+		c.socket().bind(address);
+		return c;
+	}
+
+	/** Task processor */
+	private final TaskProcessor processor;
+
+	/** Socket channel to listen for new client connections */
+	private final ServerSocketChannel channel;
+
+	/** Selector threads for client connections */
+	private final SelectorThread[] selectors;
+
+	/** Index of next selector thread to assign */
+	private int next = 0;
+
+	/** Create a new accept thread.
+	 * @param tp Task processor.
+	 * @param port Port to listen for client connections.
+	 * @param n_selectors Number of selector threads, or 0 to use the
+	 *                    blocking socket transport. */
+	public AcceptThread(TaskProcessor tp, int port, int n_selectors)
+		throws IOException
+	{
+		super("sonar_accept");
+		processor = tp;
+		channel = createChannel(port);
+		selectors = new SelectorThread[n_selectors];
+		for(int i = 0; i < n_selectors; i++) {
+			selectors[i] = new SelectorThread(tp,
+				"sonar_selector_" + (i + 1));
+		}
+		setDaemon(true);
+		start();
+	}
+
+	/** Accept loop for new client connections */
+	public void run() {
+		while(true)
+			doAccept();
+	}
+
+	/** Accept a new client connection */
+	private void doAccept() {
+		try {
+			SocketChannel sc = channel.accept();
+			try {
+				if(selectors.length > 0) {
+					sc.configureBlocking(false);
+					nextSelector().register(sc);
+				} else
+					processor.scheduleConnect(null, sc);
+			}
+			catch(IOException e) {
+				// Don't leak channels
+				sc.close();
+				throw e;
+			}
+		}
+		catch(IOException e) {
+			System.err.println("SONAR: accept I/O error " +
+				e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/** Get the next selector thread to assign a connection */
+	private SelectorThread nextSelector() {
+		SelectorThread st = selectors[next];
+		next = (next + 1) % selectors.length;
+		return st;
+	}
+}
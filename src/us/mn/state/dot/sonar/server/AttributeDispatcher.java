@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2014  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,12 +14,16 @@
  */
 package us.mn.state.dot.sonar.server;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
@@ -47,6 +51,86 @@ public class AttributeDispatcher {
 	/** Empty array of strings */
 	static private final String[] EMPTY_STRING = new String[0];
 
+	/** Lookup for creating method handles */
+	static private final MethodHandles.Lookup LOOKUP =
+		MethodHandles.lookup();
+
+	/** An accessor invokes a method (or sets a field) on SONAR objects.
+	 * The method handle is adapted to take the object and an array of
+	 * parameters, so it can be invoked without reflection. */
+	static private final class Accessor {
+
+		/** Method handle: (Object, Object[]) -> Object */
+		private final MethodHandle handle;
+
+		/** Parameter types */
+		final Class[] p_types;
+
+		/** Create an accessor for a method */
+		Accessor(Method m) throws IllegalAccessException {
+			this(unreflect(m), m.getParameterTypes());
+		}
+
+		/** Create an accessor to set a field */
+		Accessor(Field f) throws IllegalAccessException {
+			this(LOOKUP.unreflectSetter(f), new Class[] {
+				f.getType() });
+		}
+
+		/** Create an accessor for a method handle */
+		private Accessor(MethodHandle mh, Class[] pt) {
+			int n = pt.length;
+			handle = mh.asType(MethodType.genericMethodType(n + 1))
+				.asSpreader(Object[].class, n);
+			p_types = pt;
+		}
+
+		/** Invoke the accessor on an object */
+		Object invoke(SonarObject o, Object[] params)
+			throws SonarException
+		{
+			try {
+				return (Object)handle.invokeExact((Object)o,
+					params);
+			}
+			catch (Exception e) {
+				throw new SonarException(e);
+			}
+			catch (Throwable t) {
+				throw (Error)t;
+			}
+		}
+	}
+
+	/** Create a method handle for a method.  The method is made
+	 * accessible if necessary (a public method of a class which is not
+	 * public). */
+	static private MethodHandle unreflect(Method m)
+		throws IllegalAccessException
+	{
+		try {
+			return LOOKUP.unreflect(m);
+		}
+		catch (IllegalAccessException e) {
+			m.setAccessible(true);
+			return LOOKUP.unreflect(m);
+		}
+	}
+
+	/** Create an accessor for a method, or null.  A method which cannot
+	 * be accessed is reported, since its attribute will be missing from
+	 * the type. */
+	static private Accessor createAccessor(Method m) {
+		try {
+			return (m != null) ? new Accessor(m) : null;
+		}
+		catch (IllegalAccessException e) {
+			System.err.println("SONAR: cannot access " + m + ": " +
+				e.getMessage());
+			return null;
+		}
+	}
+
 	/** Test if a class is an interface extending SonarObject */
 	static private boolean is_sonar_iface(Class iface) {
 		return iface.isInterface() &&
@@ -117,23 +201,36 @@ public class AttributeDispatcher {
 	/** Constructor to create a new object */
 	private final Constructor constructor;
 
-	/** Method to store an object */
-	private final Method storer;
+	/** Accessor to store an object */
+	private final Accessor storer;
+
+	/** Accessor to destroy an object */
+	private final Accessor destroyer;
 
-	/** Method to destroy an object */
-	private final Method destroyer;
+	/** Mapping of attribute names to setter accessors */
+	private final HashMap<String, Accessor> setters =
+		new HashMap<String, Accessor>();
 
-	/** Mapping of attribute names to setter methods */
-	private final HashMap<String, Method> setters =
-		new HashMap<String, Method>();
+	/** Mapping of attribute names to getter accessors */
+	private final HashMap<String, Accessor> getters =
+		new HashMap<String, Accessor>();
 
-	/** Mapping of attribute names to getter methods */
-	private final HashMap<String, Method> getters =
-		new HashMap<String, Method>();
+	/** Mapping of attribute names to field accessors (for objects of the
+	 * implementation class) */
+	private final ConcurrentHashMap<String, Accessor> fields =
+		new ConcurrentHashMap<String, Accessor>();
 
-	/** Get an array of readable attributes */
+	/** Names of readable attributes */
+	private final String[] readable;
+
+	/** Mapping of readable attribute names to indices in readable */
+	private final HashMap<String, Integer> readable_index =
+		new HashMap<String, Integer>();
+
+	/** Get an array of readable attributes.  The array is shared, so it
+	 * must not be modified. */
 	public String[] getReadableAttributes() {
-		return getters.keySet().toArray(EMPTY_STRING);
+		return readable;
 	}
 
 	/** Test if an attribute is readable */
@@ -141,6 +238,15 @@ public class AttributeDispatcher {
 		return getters.containsKey(a);
 	}
 
+	/** Get the index of a readable attribute.
+	 * @param a Attribute name.
+	 * @return Index in readable attributes array, or -1 if the attribute
+	 *         is not readable. */
+	public int getReadableIndex(String a) {
+		Integer i = readable_index.get(a);
+		return (i != null) ? i : -1;
+	}
+
 	/** Create a new attribute dispatcher for the given object's type.
 	 * @param c The implementation class.
 	 * @param ns SONAR namespace. */
@@ -148,9 +254,12 @@ public class AttributeDispatcher {
 		the_class = c;
 		namespace = ns;
 		lookup_attributes(c);
+		readable = getters.keySet().toArray(EMPTY_STRING);
+		for (int i = 0; i < readable.length; i++)
+			readable_index.put(readable[i], i);
 		constructor = lookup_constructor(c);
-		storer = lookup_storer(c);
-		destroyer = lookup_destroyer(c);
+		storer = createAccessor(lookup_storer(c));
+		destroyer = createAccessor(lookup_destroyer(c));
 	}
 
 	/** Lookup all the attributes of the specified class */
@@ -180,17 +289,17 @@ public class AttributeDispatcher {
 	/** Lookup a setter method.
 	 * @param im Setter method from interface. */
 	private void lookup_setter(Method im) {
-		Method m = lookup__etter(im);
-		if (m != null)
-			setters.put(attribute_name(im.getName()), m);
+		Accessor a = createAccessor(lookup__etter(im));
+		if (a != null)
+			setters.put(attribute_name(im.getName()), a);
 	}
 
 	/** Lookup a getter method.
 	 * @param im Getter method from interface. */
 	private void lookup_getter(Method im) {
-		Method m = lookup__etter(im);
-		if (m != null)
-			getters.put(attribute_name(im.getName()), m);
+		Accessor a = createAccessor(lookup__etter(im));
+		if (a != null)
+			getters.put(attribute_name(im.getName()), a);
 	}
 
 	/** Lookup a setter or getter method.
@@ -239,25 +348,16 @@ public class AttributeDispatcher {
 		}
 	}
 
-	/** Invoke a method on the given SONAR object */
-	private Object _invoke(SonarObject o, Method method, Object[] params)
+	/** Invoke an accessor on the given SONAR object.  Parameters are
+	 * unmarshalled by the namespace on each call, rather than by
+	 * converters bound to the accessor, so the server and client convert
+	 * values the same way.  The conversion is a few class comparisons,
+	 * plus a cached type name lookup for object references. */
+	private Object invoke(SonarObject o, Accessor a, String[] v)
 		throws SonarException
 	{
-		try {
-			return method.invoke(o, params);
-		}
-		catch (Exception e) {
-			throw new SonarException(e);
-		}
-	}
-
-	/** Invoke a method on the given SONAR object */
-	private Object invoke(SonarObject o, Method method, String[] v)
-		throws SonarException
-	{
-		Class[] p_types = method.getParameterTypes();
-		Object[] params = namespace.unmarshall(p_types, v);
-		return _invoke(o, method, params);
+		Object[] params = namespace.unmarshall(a.p_types, v);
+		return a.invoke(o, params);
 	}
 
 	/** Store the given object */
@@ -278,10 +378,10 @@ public class AttributeDispatcher {
 	public void setValue(SonarObject o, String a, String[] v)
 		throws SonarException
 	{
-		Method m = setters.get(a);
-		if (m == null)
+		Accessor sa = setters.get(a);
+		if (sa == null)
 			throw PermissionDenied.CANNOT_WRITE;
-		invoke(o, m, v);
+		invoke(o, sa, v);
 	}
 
 	/** Lookup the named field from the given class */
@@ -305,28 +405,42 @@ public class AttributeDispatcher {
 		}
 	}
 
-	/** Set a field directly (through reflection) */
-	public void setField(SonarObject o, String a, String[] v)
+	/** Lookup a field accessor for an object */
+	private Accessor lookupFieldAccessor(SonarObject o, String a)
 		throws SonarException
 	{
-		Field f = lookupField(o.getClass(), a);
-		Object param = namespace.unmarshall(f.getType(), v);
-		try {
-			f.set(o, param);
-		}
-		catch (Exception e) {
-			throw new SonarException(e);
+		Class c = o.getClass();
+		Accessor fa = (c == the_class) ? fields.get(a) : null;
+		if (fa == null) {
+			try {
+				fa = new Accessor(lookupField(c, a));
+			}
+			catch (IllegalAccessException e) {
+				throw new SonarException(e);
+			}
+			if (c == the_class)
+				fields.put(a, fa);
 		}
+		return fa;
+	}
+
+	/** Set a field directly (without calling a setter) */
+	public void setField(SonarObject o, String a, String[] v)
+		throws SonarException
+	{
+		Accessor fa = lookupFieldAccessor(o, a);
+		Object param = namespace.unmarshall(fa.p_types[0], v);
+		fa.invoke(o, new Object[] { param });
 	}
 
 	/** Get the value of the named attribute */
 	public String[] getValue(SonarObject o, String a)
 		throws SonarException
 	{
-		Method m = getters.get(a);
-		if (m == null)
+		Accessor ga = getters.get(a);
+		if (ga == null)
 			throw PermissionDenied.CANNOT_READ;
-		Object result = _invoke(o, m, NO_PARAMS);
+		Object result = ga.invoke(o, NO_PARAMS);
 		if (result instanceof Object[]) {
 			Object[] r = (Object [])result;
 			String[] res = new String[r.length];
@@ -0,0 +1,144 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.Name;
+
+/**
+ * A change journal is a bounded record of recent namespace changes: object
+ * adds and removes, and attribute changes.  Each change has a sequence
+ * number, so a client which has enumerated a type can later ask for the
+ * changes since then, instead of enumerating the whole type again.  When
+ * the journal is full, the oldest change is discarded.
+ *
+ * Sequence numbers start from the time the journal was created (shifted
+ * left 20 bits), so a sequence from before the server was restarted is
+ * older than any change in the journal.
+ *
+ * Changes are recorded on the Task Processor thread while the watch write
+ * lock is held.  The sequence should be read while the watch read lock is
+ * held, but changes can be read without a lock.  Each change is stored with
+ * its sequence number, so a change which was overwritten while reading is
+ * detected.
+ *
+ * @author agent
+ */
+final class ChangeJournal {
+
+	/** One change in the journal */
+	static private final class Change {
+
+		/** Sequence number */
+		final long seq;
+
+		/** Kind of change (OBJECT, REMOVE or ATTRIBUTE) */
+		final Message kind;
+
+		/** Name of changed object (or attribute) */
+		final Name name;
+
+		/** Create a new change */
+		Change(long s, Message m, Name n) {
+			seq = s;
+			kind = m;
+			name = n;
+		}
+	}
+
+	/** Ring of recent changes */
+	private final AtomicReferenceArray<Change> changes;
+
+	/** Sequence number of the first change */
+	private final long first;
+
+	/** Sequence number of the next change */
+	private volatile long next;
+
+	/** Create a new change journal.
+	 * @param size Maximum number of changes to keep. */
+	ChangeJournal(int size) {
+		changes = new AtomicReferenceArray<Change>(size);
+		first = System.currentTimeMillis() << 20;
+		next = first;
+	}
+
+	/** Get the index of a sequence number */
+	private int index(long seq) {
+		return (int)(seq % changes.length());
+	}
+
+	/** Record a change.
+	 * @param m Kind of change (OBJECT, REMOVE or ATTRIBUTE).
+	 * @param n Name of object (or attribute). */
+	void record(Message m, Name n) {
+		long s = next;
+		if(changes.length() > 0)
+			changes.set(index(s), new Change(s, m, n));
+		next = s + 1;
+	}
+
+	/** Get the sequence number of the next change */
+	long getSequence() {
+		return next;
+	}
+
+	/** Check if all changes since a sequence number are in the journal */
+	boolean contains(long seq) {
+		long n = next;
+		return seq >= Math.max(first, n - changes.length()) &&
+		       seq <= n;
+	}
+
+	/** Get the changes to objects of one type between two sequence
+	 * numbers.
+	 * @param tname Type name.
+	 * @param seq First sequence number.
+	 * @param end Sequence number after the last change.
+	 * @return Map of changed object names, in order of first change, to
+	 *         the names of changed attributes.  The value is null for an
+	 *         object which was added or removed.  If any change was
+	 *         overwritten before it was read, null is returned. */
+	Map<String, Set<String>> getChanges(String tname, long seq, long end) {
+		LinkedHashMap<String, Set<String>> objs =
+			new LinkedHashMap<String, Set<String>>();
+		for(long s = seq; s < end; s++) {
+			Change c = changes.get(index(s));
+			if(c == null || c.seq != s)
+				return null;
+			Name n = c.name;
+			if(!tname.equals(n.getTypePart()))
+				continue;
+			String o = n.getObjectPart();
+			if(c.kind != Message.ATTRIBUTE)
+				objs.put(o, null);
+			else if(!objs.containsKey(o)) {
+				Set<String> attrs = new LinkedHashSet<String>();
+				attrs.add(n.getAttributePart());
+				objs.put(o, attrs);
+			} else {
+				Set<String> attrs = objs.get(o);
+				if(attrs != null)
+					attrs.add(n.getAttributePart());
+			}
+		}
+		return objs;
+	}
+}
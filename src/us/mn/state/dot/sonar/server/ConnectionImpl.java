@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -14,36 +14,54 @@
  */
 package us.mn.state.dot.sonar.server;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.nio.ByteBuffer;
 import java.nio.BufferOverflowException;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import javax.net.ssl.SSLException;
 import us.mn.state.dot.sched.TimeSteward;
 import us.mn.state.dot.sonar.Conduit;
 import us.mn.state.dot.sonar.Connection;
 import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageDecoder;
+import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
 import us.mn.state.dot.sonar.ProtocolError;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
-import us.mn.state.dot.sonar.SSLState;
 import us.mn.state.dot.sonar.User;
 
 /**
  * A connection encapsulates the state of one client connection on the server.
  *
+ * Each connection has an executor, which performs its tasks one at a time
+ * on a shared worker pool.  The transport (SSL state and message
+ * encoder/decoder) and outbox are owned by the connection executor, and may
+ * only be used there.
+ * Messages which update the namespace (OBJECT, REMOVE and ATTRIBUTE) are
+ * handled on the Task Processor thread, which also owns the phantom object.
+ * Other messages wait until earlier updates have been handled, so all
+ * messages from a client are handled in the order received.
+ * ENUMERATE messages are handled by cursors, which run as bulk tasks for
+ * one time slice at a time.
+ *
  * @author Douglas Lau
  */
 public class ConnectionImpl extends Conduit implements Connection {
@@ -66,6 +84,10 @@ public class ConnectionImpl extends Conduit implements Connection {
 		Message.ENUMERATE, Message.IGNORE, Message.OBJECT,
 		Message.REMOVE, Message.ATTRIBUTE);
 
+	/** Define the set of messages which update the namespace */
+	static protected final EnumSet<Message> UPDATES = EnumSet.of(
+		Message.OBJECT, Message.REMOVE, Message.ATTRIBUTE);
+
 	/** Lookup a message from the specified message code */
 	static protected Message lookupMessage(char code) throws ProtocolError {
 		for(Message m: MESSAGES)
@@ -74,6 +96,20 @@ public class ConnectionImpl extends Conduit implements Connection {
 		throw ProtocolError.INVALID_MESSAGE_CODE;
 	}
 
+	/** Time slice (ns) for each enumeration task */
+	static private final long ENUMERATE_SLICE_NS = 2000000;
+
+	/** Parse a journal sequence.
+	 * @return Sequence, or -1 if invalid. */
+	static private long parseSequence(String seq) {
+		try {
+			return Long.parseLong(seq);
+		}
+		catch(NumberFormatException e) {
+			return -1;
+		}
+	}
+
 	/** Random number generator for session IDs */
 	static protected final Random RAND = new Random();
 
@@ -97,7 +133,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 
 	/** User logged in on the connection.
 	 * May be null (before a successful login). */
-	protected UserImpl user;
+	protected volatile UserImpl user;
 
 	/** Get the user logged in on the connection.
 	 * May be null (before a successful login). */
@@ -125,34 +161,181 @@ public class ConnectionImpl extends Conduit implements Connection {
 	/** SONAR namepsace */
 	protected final ServerNamespace namespace;
 
-	/** Selection key for the socket channel */
-	protected final SelectionKey key;
-
-	/** Channel to client */
-	protected final SocketChannel channel;
-
 	/** Inet address of client */
 	private final InetAddress address;
 
-	/** SSL state for encrypting network data */
-	protected final SSLState state;
+	/** Transport for network data */
+	private final Transport transport;
 
 	/** Set of names the connection is watching */
 	protected final Set<String> watching = new HashSet<String>();
 
+	/** Index of watch entries for all connections */
+	private final WatchIndex watch_index;
+
+	/** Policy for clients which cannot keep up */
+	private final OutboundPolicy policy;
+
+	/** Executor for connection tasks */
+	private final SerialExecutor executor;
+
+	/** Flag to indicate a message processing task is pending */
+	private final AtomicBoolean process_pending = new AtomicBoolean();
+
+	/** Flag to indicate a flush task is pending */
+	private final AtomicBoolean flush_pending = new AtomicBoolean();
+
+	/** Count of processing and flush requests which were coalesced with
+	 * a pending task */
+	private final AtomicLong n_coalesced = new AtomicLong();
+
+	/** Task to process incoming messages */
+	private final Runnable process_task = new Runnable() {
+		public void run() {
+			process_pending.set(false);
+			processMessages();
+		}
+	};
+
+	/** Task to flush outgoing data */
+	private final Runnable flush_task = new Runnable() {
+		public void run() {
+			flush_pending.set(false);
+			flush();
+		}
+	};
+
+	/** Gate to keep messages in order */
+	private final MessageGate gate = new MessageGate();
+
+	/** Task to release messages waiting at the gate */
+	private final Runnable release_task = new Runnable() {
+		public void run() {
+			releaseMessages();
+		}
+	};
+
+	/** Task to enumerate for one time slice */
+	private final Runnable enumerate_task = new Runnable() {
+		public void run() {
+			enumerate();
+		}
+	};
+
+	/** Cursors for ENUMERATE messages, in the order received.  Only the
+	 * first cursor is running; the others have not started. */
+	private final ArrayDeque<EnumerationCursor> enumerations =
+		new ArrayDeque<EnumerationCursor>();
+
+	/** Flag to indicate enumeration is waiting for encoded data to be
+	 * written before the next step */
+	private boolean enumerate_paused = false;
+
+	/** Limit of encoded data (bytes) for enumeration.  This is below
+	 * the outbound policy limit, so an enumeration does not cause the
+	 * connection to be blocked. */
+	private final int enumerate_bytes;
+
+	/** Outbox of attribute notifications waiting to be encoded, mapped
+	 * by attribute name.  When the client cannot keep up, a newer value
+	 * replaces an older one which has not been sent yet. */
+	private final LinkedHashMap<String, byte[]> outbox =
+		new LinkedHashMap<String, byte[]>();
+
+	/** Names of attributes with dropped notifications.  The current
+	 * value of each is sent when the connection is no longer blocked. */
+	private final LinkedHashSet<String> dropped =
+		new LinkedHashSet<String>();
+
+	/** Time (ms) when the connection became blocked (0 if not blocked) */
+	private volatile long blocked_since = 0;
+
+	/** Total time (ms) blocked, not including the current period */
+	private volatile long blocked_total = 0;
+
+	/** Count of attribute notifications replaced in the outbox */
+	private volatile long n_conflated = 0;
+
+	/** Count of attribute notifications dropped */
+	private volatile long n_dropped = 0;
+
+	/** Get the time (ms) the connection has been blocked, or 0 if it is
+	 * not currently blocked */
+	public long getBlockedTime() {
+		long since = blocked_since;
+		return (since > 0)
+		      ? TimeSteward.currentTimeMillis() - since
+		      : 0;
+	}
+
+	/** Get the total time (ms) the connection has been blocked */
+	public long getTotalBlockedTime() {
+		return blocked_total + getBlockedTime();
+	}
+
+	/** Get the count of attribute notifications replaced by newer
+	 * values before being sent */
+	public long getConflatedCount() {
+		return n_conflated;
+	}
+
+	/** Get the count of attribute notifications dropped */
+	public long getDroppedCount() {
+		return n_dropped;
+	}
+
+	/** Get connection statistics for the debug log */
+	private String getStats() {
+		return "Stats on " + getName() + ": blocked " +
+			getTotalBlockedTime() + " ms, conflated " +
+			getConflatedCount() + ", dropped " + getDroppedCount() +
+			", coalesced " + getCoalescedCount() + ", max queue " +
+			getMaxQueueDepth();
+	}
+
+	/** Get the number of tasks waiting on the connection executor */
+	public int getQueueDepth() {
+		return executor.getQueued();
+	}
+
+	/** Get the maximum number of tasks which have been waiting on the
+	 * connection executor */
+	public int getMaxQueueDepth() {
+		return executor.getMaxQueued();
+	}
+
+	/** Get the count of processing and flush requests which were
+	 * coalesced with a pending task */
+	public long getCoalescedCount() {
+		return n_coalesced.get();
+	}
+
 	/** Phantom object for setting attributes before storing a new object
-	 * in the database. */
+	 * in the database.  This may only be used on the Task Processor
+	 * thread. */
 	protected SonarObject phantom;
 
-	/** Create a new connection */
-	public ConnectionImpl(TaskProcessor p, SelectionKey k, SocketChannel c)
+	/** Create a new connection.
+	 * @param p Task processor.
+	 * @param st Selector thread for a non-blocking transport, or null
+	 *           for a blocking socket transport.
+	 * @param c Channel to client. */
+	public ConnectionImpl(TaskProcessor p, SelectorThread st,
+		SocketChannel c)
 		throws SSLException, IOException
 	{
 		processor = p;
 		namespace = processor.getNamespace();
-		key = k;
-		channel = c;
-		state = new SSLState(this, processor.createSSLEngine());
+		watch_index = processor.getWatchIndex();
+		policy = processor.getOutboundPolicy();
+		enumerate_bytes = policy.max_bytes / 2;
+		executor = processor.createExecutor();
+		if(st != null)
+			transport = new NioTransport(this, p, st, c);
+		else {
+			transport = new SocketTransport(this, p,
+				p.createSSLSocket(c.socket()));
+		}
 		address = c.socket().getInetAddress();
 		StringBuilder h = new StringBuilder();
 		h.append(address.getHostAddress());
@@ -166,19 +349,27 @@ public class ConnectionImpl extends Conduit implements Connection {
 
 	/** Start watching the specified name */
 	protected void startWatching(Name name) {
+		String n = name.toString();
 		synchronized(watching) {
-			watching.remove(name.toString());
-			if(isWatchPositive(name))
-				watching.add(name.toString());
+			watching.remove(n);
+			watch_index.remove(n, this);
+			if(isWatchPositive(name)) {
+				watching.add(n);
+				watch_index.add(n, this);
+			}
 		}
 	}
 
 	/** Stop watching the specified name */
 	protected void stopWatching(Name name) {
+		String n = name.toString();
 		synchronized(watching) {
-			watching.remove(name.toString());
-			if(isWatchNegative(name))
-				watching.add(name.toString());
+			watching.remove(n);
+			watch_index.remove(n, this);
+			if(isWatchNegative(name)) {
+				watching.add(n);
+				watch_index.add(n, this);
+			}
 		}
 	}
 
@@ -196,22 +387,70 @@ public class ConnectionImpl extends Conduit implements Connection {
 		}
 	}
 
+	/** Start transferring data for the connection */
+	void start() {
+		transport.start();
+	}
+
+	/** Perform an interactive task on the connection executor */
+	void execute(Runnable r) {
+		executor.execute(r);
+	}
+
+	/** Perform a task on the connection executor */
+	void execute(WorkClass wc, Runnable r) {
+		executor.execute(wc, r);
+	}
+
+	/** Schedule incoming messages to be processed.  At most one
+	 * processing task is pending at a time; a request which arrives
+	 * while one is pending is coalesced with it. */
+	void scheduleProcessMessages() {
+		if(process_pending.compareAndSet(false, true))
+			execute(WorkClass.CONTROL, process_task);
+		else
+			n_coalesced.incrementAndGet();
+	}
+
+	/** Schedule outgoing data to be flushed.  At most one flush task is
+	 * pending at a time; a request which arrives while one is pending is
+	 * coalesced with it. */
+	void scheduleFlush() {
+		if(flush_pending.compareAndSet(false, true))
+			execute(WorkClass.INTERACTIVE, flush_task);
+		else
+			n_coalesced.incrementAndGet();
+	}
+
 	/** Destroy the connection */
 	public void destroy() {
-		if(isConnected())
-			disconnect("Connection destroyed");
+		execute(WorkClass.CONTROL, new Runnable() {
+			public void run() {
+				if(isConnected())
+					disconnect("Connection destroyed");
+			}
+		});
 	}
 
 	/** Disconnect the client connection.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	protected void disconnect() {
+		if(TaskProcessor.DEBUG.isOpen())
+			TaskProcessor.DEBUG.log(getStats());
 		super.disconnect();
+		outbox.clear();
+		dropped.clear();
+		gate.clear();
+		enumerations.clear();
+		enumerate_paused = false;
 		synchronized(watching) {
+			for(String n: watching)
+				watch_index.remove(n, this);
 			watching.clear();
 		}
-		processor.disconnect(key);
+		processor.removeClient(this);
 		try {
-			channel.close();
+			transport.close();
 		}
 		catch(IOException e) {
 			TaskProcessor.DEBUG.log("Close error: " +
@@ -220,118 +459,191 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Disconnect the client connection.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	protected void disconnect(String msg) {
 		TaskProcessor.DEBUG.log(msg + " on " + getName() + ", " +
 			getUserName());
 		disconnect();
 	}
 
-	/** Read messages from the socket channel.
-	 * This may only be called on the Server thread. */
-	void doRead() throws IOException {
-		int nbytes;
-		ByteBuffer net_in = state.getNetInBuffer();
-		synchronized(net_in) {
-			nbytes = channel.read(net_in);
-		}
-		if(nbytes > 0)
-			processor.processMessages(this);
-		else if(nbytes < 0)
-			throw new EOFException();
-	}
-
-	/** Write pending data to the socket channel.
-	 * This may only be called on the Server thread. */
-	void doWrite() throws IOException {
-		ByteBuffer net_out = state.getNetOutBuffer();
-		synchronized(net_out) {
-			net_out.flip();
-			channel.write(net_out);
-			if(!net_out.hasRemaining())
-				disableWrite();
-			net_out.compact();
-		}
-		processor.flush(this);
+	/** Resume SSL handshaking after delegated tasks have completed */
+	@Override
+	protected void resumeHandshake() {
+		processor.processMessages(this);
 	}
 
 	/** Enable writing data back to the client */
 	public void enableWrite() {
-		key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-		key.selector().wakeup();
+		transport.enableWrite();
 	}
 
 	/** Disable writing data back to the client */
 	public void disableWrite() {
-		key.interestOps(SelectionKey.OP_READ);
-		key.selector().wakeup();
+		transport.disableWrite();
 	}
 
-	/** Notify the client of a new object being added.
-	 * This may only be called on the Task Processor thread. */
-	protected void notifyObject(SonarObject o) {
-		try {
-			namespace.enumerateObject(state.encoder, o);
-			flush();
-		}
-		catch(SonarException e) {
-			disconnect("Notify error: " + e.getMessage());
-		}
-		catch(IOException e) {
-			disconnect("Notify error: " + e.getMessage());
-		}
+	/** Send a previously encoded message to the client.  The flush is
+	 * corked until the end of the current batch of tasks, so that many
+	 * notifications are written together.
+	 * This may only be called on the connection executor.
+	 * @param msg Encoded message, shared with other connections. */
+	void notifyMessage(byte[] msg) {
+		getEncoder().write(msg);
+		scheduleFlush();
 	}
 
-	/** Notify the client of a new object being added.
-	 * This may only be called on the Task Processor thread. */
-	void notifyObject(Name name, SonarObject o) {
-		if(isWatching(name))
-			notifyObject(o);
+	/** Get the message encoder.  Any attribute notifications in the
+	 * outbox are encoded first, so other messages cannot overtake them.
+	 * This may only be called on the connection executor. */
+	private MessageEncoder getEncoder() {
+		MessageEncoder enc = transport.getEncoder();
+		for(byte[] msg: outbox.values())
+			enc.write(msg);
+		outbox.clear();
+		return enc;
 	}
 
-	/** Notify the client of an attribute change.
-	 * This may only be called on the Task Processor thread. */
-	void notifyAttribute(Name name, String[] params) {
-		User u = user;
-		if(u != null &&
-		   namespace.canRead(name, u, address) &&
-		   isWatching(name))
-		{
-			notifyAttribute(name.toString(), params);
+	/** Get the number of encoded bytes waiting to be written */
+	private int getEncodedBytes() {
+		return transport.getPendingBytes();
+	}
+
+	/** Check if the client is not keeping up with notifications */
+	private boolean isBacklogged() {
+		return getEncodedBytes() >= policy.max_bytes;
+	}
+
+	/** Update the blocked state of the connection.  A connection which
+	 * has been blocked too long is disconnected.
+	 * This may only be called on the connection executor. */
+	private void updateBlocked() {
+		long now = TimeSteward.currentTimeMillis();
+		if(isBacklogged()) {
+			if(blocked_since == 0)
+				blocked_since = now;
+			else if(policy.isExpired(now - blocked_since)) {
+				disconnect("Blocked " + (now - blocked_since) +
+					" ms");
+			}
+		} else if(blocked_since > 0) {
+			blocked_total += now - blocked_since;
+			blocked_since = 0;
 		}
 	}
 
-	/** Notify the client of an attribute change.
-	 * This may only be called on the Task Processor thread. */
-	protected void notifyAttribute(String name, String[] params) {
-		try {
-			state.encoder.encode(Message.ATTRIBUTE, name, params);
-			flush();
+	/** Move attribute notifications from the outbox to the encoder,
+	 * until the backlog threshold is reached. */
+	private void drainOutbox() {
+		Iterator<byte[]> it = outbox.values().iterator();
+		while(it.hasNext() && !isBacklogged()) {
+			transport.getEncoder().write(it.next());
+			it.remove();
 		}
-		catch(IOException e) {
-			disconnect("I/O error: notifyAttribute " + name);
+	}
+
+	/** Send the current value of attributes with dropped notifications,
+	 * until the backlog threshold is reached.  An attribute of an object
+	 * which has been removed is skipped, since the client is notified of
+	 * the removal. */
+	private void resendDropped() throws IOException {
+		User u = user;
+		Iterator<String> it = dropped.iterator();
+		while(it.hasNext() && outbox.isEmpty() && !isBacklogged()) {
+			Name name = new Name(it.next());
+			it.remove();
+			if(u == null || isEnumerating(name) ||
+			   !namespace.canRead(name, u, address))
+				continue;
+			try {
+				String[] v = namespace.getAttribute(name);
+				transport.getEncoder().encode(Message.ATTRIBUTE,
+					name.toString(), v);
+			}
+			catch(SonarException e) {
+				// Object has been removed
+			}
 		}
 	}
 
-	/** Notify the client of a name being removed.
-	 * This may only be called on the Task Processor thread. */
-	void notifyRemove(Name name) {
-		if(isWatching(name)) {
-			notifyRemove(name.toString());
-			stopWatching(name);
+	/** Notify the client of an attribute change.  The connection must
+	 * be watching the name (from the watch index).
+	 * This may only be called on the connection executor.
+	 * @param name Attribute name.
+	 * @param msg Encoded ATTRIBUTE message. */
+	void notifyAttribute(Name name, byte[] msg) {
+		if(!isConnected() || isEnumerating(name))
+			return;
+		User u = user;
+		if(u != null && namespace.canRead(name, u, address)) {
+			if(outbox.isEmpty() && dropped.isEmpty() &&
+			   !isBacklogged())
+				notifyMessage(msg);
+			else
+				notifyBlocked(name, msg);
 		}
 	}
 
-	/** Notify the client of a name being removed.
-	 * This may only be called on the Task Processor thread. */
-	protected void notifyRemove(String name) {
-		try {
-			state.encoder.encode(Message.REMOVE, name);
-			flush();
+	/** Notify a blocked client of an attribute change, according to the
+	 * outbound policy.
+	 * This may only be called on the connection executor. */
+	private void notifyBlocked(Name name, byte[] msg) {
+		switch(policy.action) {
+		case CONFLATE:
+			if(outbox.put(name.toString(), msg) != null)
+				n_conflated++;
+			scheduleFlush();
+			break;
+		case DROP:
+			dropped.add(name.toString());
+			n_dropped++;
+			scheduleFlush();
+			break;
+		default:
+			disconnect("Slow client backlog " + getEncodedBytes() +
+				" bytes");
+			break;
 		}
-		catch(IOException e) {
-			disconnect("I/O error: notifyRemove " + name);
+	}
+
+	/** Notify the client of a name being removed.  The connection must
+	 * be watching the name (from the watch index).
+	 * This may only be called on the connection executor.
+	 * @param name Object name.
+	 * @param msg Encoded REMOVE message. */
+	void notifyRemove(Name name, byte[] msg) {
+		if(!checkRemove(name))
+			notifyMessage(msg);
+		stopWatching(name);
+	}
+
+	/** Notify the client of a new object.  The connection must be
+	 * watching the name (from the watch index).
+	 * This may only be called on the connection executor.
+	 * @param name Object name.
+	 * @param msg Encoded object (ATTRIBUTE and OBJECT messages). */
+	void notifyObject(Name name, byte[] msg) {
+		if(!isEnumerating(name))
+			notifyMessage(msg);
+	}
+
+	/** Check if an object has not been reached by an enumeration cursor.
+	 * This may only be called on the connection executor. */
+	private boolean isEnumerating(Name name) {
+		for(EnumerationCursor c: enumerations) {
+			if(c.isPending(name))
+				return true;
 		}
+		return false;
+	}
+
+	/** Check a REMOVE notification with all enumeration cursors.
+	 * This may only be called on the connection executor.
+	 * @return true if the notification is not needed. */
+	private boolean checkRemove(Name name) {
+		boolean r = false;
+		for(EnumerationCursor c: enumerations)
+			r |= c.checkRemove(name);
+		return r;
 	}
 
 	/** Check that the client is logged in */
@@ -341,7 +653,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Process any incoming messages.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	void processMessages() {
 		if(!isConnected())
 			return;
@@ -357,20 +669,21 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Process any incoming messages.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	protected void _processMessages() throws SSLException, IOException {
-		while(state.doRead()) {
-			List<String> params = state.decoder.decode();
+		MessageDecoder dec = transport.getDecoder();
+		while(transport.read()) {
+			List<String> params = dec.decode();
 			while(params != null) {
 				processMessage(params);
-				params = state.decoder.decode();
+				params = dec.decode();
 			}
 		}
 		flush();
 	}
 
 	/** Process one message from the client.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	protected void processMessage(List<String> params)
 		throws IOException
 	{
@@ -379,14 +692,20 @@ public class ConnectionImpl extends Conduit implements Connection {
 				_processMessage(params);
 		}
 		catch(SonarException e) {
-			state.encoder.encode(Message.SHOW, e.getMessage());
-			TaskProcessor.DEBUG.log("Message error: " +
-				e.getMessage());
+			showError(e);
 		}
 	}
 
-	/** Process one message from the client.
-	 * This may only be called on the Task Processor thread. */
+	/** Report a message error to the client.
+	 * This may only be called on the connection executor. */
+	private void showError(SonarException e) throws IOException {
+		getEncoder().encode(Message.SHOW, e.getMessage());
+		TaskProcessor.DEBUG.log("Message error: " + e.getMessage());
+	}
+
+	/** Process one message from the client.  A message which must wait
+	 * for earlier updates is handled when released from the gate.
+	 * This may only be called on the connection executor. */
 	protected void _processMessage(List<String> params)
 		throws SonarException
 	{
@@ -394,23 +713,103 @@ public class ConnectionImpl extends Conduit implements Connection {
 		if(c.length() != 1)
 			throw ProtocolError.INVALID_MESSAGE_CODE;
 		Message m = lookupMessage(c.charAt(0));
-		m.handle(this, params);
+		if(gate.pass(m, params))
+			handleMessage(m, params);
 	}
 
-	/** Start writing data to client.
+	/** Handle one message from the client.  Namespace updates are
+	 * scheduled on the Task Processor thread.
+	 * This may only be called on the connection executor. */
+	private void handleMessage(Message m, List<String> params)
+		throws SonarException
+	{
+		if(UPDATES.contains(m)) {
+			// The decoder reuses the parameter list
+			processor.scheduleUpdate(this, m,
+				new ArrayList<String>(params));
+		} else
+			m.handle(this, params);
+	}
+
+	/** Handle messages released from the gate, until one must wait.
+	 * This may only be called on the connection executor. */
+	private void releaseMessages() {
+		try {
+			while(isConnected()) {
+				MessageGate.Entry e = gate.release();
+				if(e == null)
+					break;
+				try {
+					handleMessage(e.msg, e.params);
+				}
+				catch(SonarException ex) {
+					showError(ex);
+				}
+			}
+			if(isConnected())
+				flush();
+		}
+		catch(IOException e) {
+			disconnect("I/O error: " + e.getMessage());
+		}
+	}
+
+	/** Process one namespace update message from the client.  When all
+	 * updates are complete, any messages waiting at the gate are
+	 * released on the connection executor.
 	 * This may only be called on the Task Processor thread. */
+	void processUpdate(Message m, List<String> params) {
+		try {
+			if(isConnected())
+				m.handle(this, params);
+		}
+		catch(SonarException e) {
+			final String msg = e.getMessage();
+			TaskProcessor.DEBUG.log("Message error: " + msg);
+			execute(WorkClass.CONTROL, new Runnable() {
+				public void run() {
+					showMessage(msg);
+				}
+			});
+		}
+		finally {
+			if(gate.complete())
+				execute(WorkClass.CONTROL, release_task);
+		}
+	}
+
+	/** Send a SHOW message to the client.
+	 * This may only be called on the connection executor. */
+	private void showMessage(String msg) {
+		if(!isConnected())
+			return;
+		try {
+			getEncoder().encode(Message.SHOW, msg);
+			flush();
+		}
+		catch(IOException e) {
+			disconnect("I/O error: " + e.getMessage());
+		}
+	}
+
+	/** Start writing data to client.
+	 * This may only be called on the connection executor. */
 	protected void startWrite() throws IOException {
-		if(state.shouldWrite())
-			state.doWrite();
+		transport.write();
 	}
 
 	/** Tell the I/O thread to flush the output buffer.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	public void flush() {
 		try {
-			state.encoder.flush();
-			if(isConnected())
+			drainOutbox();
+			resendDropped();
+			transport.getEncoder().flush();
+			if(isConnected()) {
 				startWrite();
+				updateBlocked();
+				resumeEnumerate();
+			}
 		}
 		catch(BufferOverflowException e) {
 			disconnect("Buffer overflow error");
@@ -421,7 +820,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Respond to a LOGIN message.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	public void doLogin(List<String> params) throws SonarException {
 		if(user != null)
 			throw ProtocolError.ALREADY_LOGGED_IN;
@@ -437,15 +836,26 @@ public class ConnectionImpl extends Conduit implements Connection {
 		processor.authenticate(this, name, password);
 	}
 
-	/** Finish a LOGIN after user has been authenticated.
+	/** Finish a LOGIN after user has been authenticated.  The user is
+	 * set immediately, but the response is sent on the connection executor.
 	 * This may only be called on the Task Processor thread. */
 	public void finishLogin(UserImpl u) {
+		user = u;
+		execute(WorkClass.CONTROL, new Runnable() {
+			public void run() {
+				sendLogin();
+			}
+		});
+	}
+
+	/** Send the response to a successful LOGIN.
+	 * This may only be called on the connection executor. */
+	private void sendLogin() {
 		try {
-			user = u;
 			// The first TYPE message indicates a successful login
-			state.encoder.encode(Message.TYPE);
+			getEncoder().encode(Message.TYPE);
 			// Send the connection name to the client first
-			state.encoder.encode(Message.SHOW, hostport);
+			getEncoder().encode(Message.SHOW, hostport);
 			flush();
 		}
 		catch(IOException e) {
@@ -454,10 +864,10 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Fail a LOGIN attempt.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	public void failLogin() {
 		try {
-			state.encoder.encode(Message.SHOW, PermissionDenied.
+			getEncoder().encode(Message.SHOW, PermissionDenied.
 				AUTHENTICATION_FAILED.getMessage());
 			flush();
 		}
@@ -479,7 +889,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 	/** Fail a PASSWORD change attempt */
 	public void failPassword(String msg) {
 		try {
-			state.encoder.encode(Message.SHOW, msg);
+			getEncoder().encode(Message.SHOW, msg);
 			flush();
 		}
 		catch(IOException e) {
@@ -488,43 +898,168 @@ public class ConnectionImpl extends Conduit implements Connection {
 	}
 
 	/** Respond to a QUIT message.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	public void doQuit(List<String> params) {
 		disconnect();
 	}
 
-	/** Respond to an ENUMERATE message.
-	 * This may only be called on the Task Processor thread. */
+	/** Respond to an ENUMERATE message.  The watch lock is held so that
+	 * no namespace update can happen between starting to watch the name
+	 * and creating the enumeration cursor (or reading the journal
+	 * sequence, to resync a type).
+	 * This may only be called on the connection executor. */
 	public void doEnumerate(List<String> params) throws SonarException {
 		checkLoggedIn();
-		if(params.size() > 2)
+		if(params.size() > 3)
 			throw ProtocolError.WRONG_PARAMETER_COUNT;
 		Name name = createName(params);
+		boolean resync = params.size() > 2;
+		if(resync && !name.isType())
+			throw ProtocolError.WRONG_PARAMETER_COUNT;
 		if(!namespace.canRead(name, user, address))
 			throw PermissionDenied.create(name);
-		startWatching(name);
+		ChangeJournal journal = processor.getJournal();
+		long seq = resync ? parseSequence(params.get(2)) : -1;
+		long cur;
+		EnumerationCursor c = null;
+		Lock lock = processor.getWatchLock();
+		lock.lock();
 		try {
-			namespace.enumerate(state.encoder, name);
+			cur = journal.getSequence();
+			if(!resync || !journal.contains(seq))
+				c = namespace.createCursor(name);
+			startWatching(name);
 		}
-		catch(IOException e) {
-			throw new SonarException(e.getMessage());
+		finally {
+			lock.unlock();
+		}
+		if(resync) {
+			try {
+				c = startResync(name, params.get(2), seq, cur, c);
+			}
+			catch(IOException e) {
+				disconnect("I/O error: enumerate " +
+					e.getMessage());
+				return;
+			}
+		}
+		enumerations.add(c);
+		if(enumerations.size() == 1)
+			execute(WorkClass.BULK, enumerate_task);
+	}
+
+	/** Start to resync a type with the changes since a journal sequence.
+	 * A JOURNAL message is sent first, with the sequence (or empty, if
+	 * the journal no longer contains all changes since then) and the
+	 * current sequence.  The journal is read without holding the watch
+	 * lock; changes after the current sequence will be notified.
+	 * @param name Type name.
+	 * @param seq Sequence from a previous JOURNAL message.
+	 * @param s Parsed sequence.
+	 * @param cur Current sequence (read while watch lock was held).
+	 * @param c Enumeration cursor, if the sequence is not in the journal.
+	 * @return Cursor to resync or enumerate the type. */
+	private EnumerationCursor startResync(Name name, String seq, long s,
+		long cur, EnumerationCursor c) throws SonarException, IOException
+	{
+		String[] cs = { Long.toString(cur) };
+		String tname = name.getTypePart();
+		Map<String, Set<String>> changes = (c == null)
+		      ? processor.getJournal().getChanges(tname, s, cur)
+		      : null;
+		if(changes != null) {
+			getEncoder().encode(Message.JOURNAL, seq, cs);
+			return new ResyncCursor(namespace, name, changes, user,
+				address);
+		}
+		getEncoder().encode(Message.JOURNAL, "", cs);
+		// Changes were overwritten while reading the journal; any
+		// changes since watching began are still pending on this
+		// executor, so the type can be enumerated from now.
+		return (c != null) ? c : namespace.createCursor(name);
+	}
+
+	/** Enumerate with cursors for one time slice, or until the encoded
+	 * data reaches the enumeration limit.  No lock is held, so namespace
+	 * updates can proceed during the slice: cursors walk an immutable
+	 * snapshot, and notifications are checked against the cursors on this
+	 * same executor.  After each slice, enumeration is paused until the
+	 * encoded data has been written below the limit.
+	 * This may only be called on the connection executor. */
+	private void enumerate() {
+		if(!isConnected())
+			return;
+		if(!isEnumerateFull()) {
+			try {
+				enumerateSlice();
+			}
+			catch(IOException e) {
+				disconnect("I/O error: enumerate " +
+					e.getMessage());
+				return;
+			}
+		}
+		enumerate_paused = !enumerations.isEmpty();
+		flush();
+	}
+
+	/** Step enumeration cursors for one time slice */
+	private void enumerateSlice() throws IOException {
+		long deadline = System.nanoTime() + ENUMERATE_SLICE_NS;
+		while(!enumerations.isEmpty()) {
+			if(!stepCursor(enumerations.peek(), deadline))
+				break;
+			enumerations.poll();
+			if(isEnumerateFull() || System.nanoTime() - deadline >= 0)
+				break;
+		}
+	}
+
+	/** Check if the encoded data has reached the enumeration limit */
+	private boolean isEnumerateFull() {
+		return getEncodedBytes() > enumerate_bytes;
+	}
+
+	/** Resume a paused enumeration if the encoded data has been written
+	 * below the enumeration limit.
+	 * This may only be called on the connection executor. */
+	private void resumeEnumerate() {
+		if(enumerate_paused && !isEnumerateFull()) {
+			enumerate_paused = false;
+			execute(WorkClass.BULK, enumerate_task);
+		}
+	}
+
+	/** Step one enumeration cursor.  Errors are reported to the client.
+	 * @return true if the cursor is done. */
+	private boolean stepCursor(EnumerationCursor c, long deadline)
+		throws IOException
+	{
+		try {
+			return c.step(getEncoder(), deadline, enumerate_bytes);
+		}
+		catch(SonarException e) {
+			getEncoder().encode(Message.SHOW, e.getMessage());
+			TaskProcessor.DEBUG.log("Enumerate error: " +
+				e.getMessage());
+			return true;
 		}
 	}
 
 	/** Create a name */
 	private Name createName(List<String> params) {
 		return (params.size() > 1)
-		      ? new Name(params.get(1))
-		      : new Name("");
+		      ? Name.intern(params.get(1))
+		      : Name.intern("");
 	}
 
 	/** Respond to an IGNORE message.
-	 * This may only be called on the Task Processor thread. */
+	 * This may only be called on the connection executor. */
 	public void doIgnore(List<String> params) throws SonarException {
 		checkLoggedIn();
 		if(params.size() != 2)
 			throw ProtocolError.WRONG_PARAMETER_COUNT;
-		Name name = new Name(params.get(1));
+		Name name = Name.intern(params.get(1));
 		stopWatching(name);
 	}
 
@@ -534,7 +1069,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 		checkLoggedIn();
 		if(params.size() != 2)
 			throw ProtocolError.WRONG_PARAMETER_COUNT;
-		Name name = new Name(params.get(1));
+		Name name = Name.intern(params.get(1));
 		if(name.isObject()) {
 			if(!namespace.canAdd(name, user, address))
 				throw PermissionDenied.create(name);
@@ -574,7 +1109,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 		checkLoggedIn();
 		if(params.size() != 2)
 			throw ProtocolError.WRONG_PARAMETER_COUNT;
-		Name name = new Name(params.get(1));
+		Name name = Name.intern(params.get(1));
 		if(!namespace.canRemove(name, user, address))
 			throw PermissionDenied.create(name);
 		SonarObject obj = namespace.lookupObject(name);
@@ -591,7 +1126,7 @@ public class ConnectionImpl extends Conduit implements Connection {
 		checkLoggedIn();
 		if(params.size() < 2)
 			throw ProtocolError.WRONG_PARAMETER_COUNT;
-		Name name = new Name(params.get(1));
+		Name name = Name.intern(params.get(1));
 		if(name.isAttribute()) {
 			if(!namespace.canUpdate(name, user, address))
 				throw PermissionDenied.create(name);
@@ -0,0 +1,170 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.Name;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * An enumeration cursor encodes the response to one ENUMERATE message in
+ * steps, so that a large type does not delay other work.  Each step is
+ * bounded by time and by the size of the encoded data, so the encoder does
+ * not need to grow to hold a whole type.
+ *
+ * When enumerating a type, a snapshot of its objects is taken when the
+ * cursor is created (while the watch lock is held).  Attribute values are
+ * read as the cursor reaches each object, so notifications for pending
+ * objects must not be sent to the client.  Objects added or removed after
+ * the cursor was created are sent as ordinary notifications, unless a
+ * pending object is removed before the cursor reaches it.  Each object is
+ * encoded starting with an absolute name, so notifications can be sent
+ * between steps.
+ *
+ * This class is not thread-safe; it may only be used on the connection
+ * executor.
+ *
+ * @author agent
+ */
+class EnumerationCursor {
+
+	/** SONAR namespace */
+	private final ServerNamespace namespace;
+
+	/** Name being enumerated */
+	private final Name name;
+
+	/** Type node for a type (or type attribute) enumeration, or null
+	 * for a single step enumeration */
+	private final TypeNode type;
+
+	/** Snapshot of objects to enumerate */
+	private final TypeNode.Snapshot snapshot;
+
+	/** Objects removed before the cursor reached them */
+	private final BitSet removed = new BitSet();
+
+	/** Index of next object to enumerate (-1 before starting) */
+	private int pos = -1;
+
+	/** Flag to indicate the cursor has yielded */
+	private boolean yielded = false;
+
+	/** Create a new enumeration cursor.
+	 * @param ns SONAR namespace.
+	 * @param n Name to enumerate.
+	 * @param t Type node to enumerate in steps, or null. */
+	EnumerationCursor(ServerNamespace ns, Name n, TypeNode t) {
+		namespace = ns;
+		name = n;
+		type = t;
+		snapshot = (t != null) ? t.getSnapshot() : null;
+	}
+
+	/** Check if the cursor enumerates type attributes */
+	private boolean isAttribute() {
+		return name.isAttribute();
+	}
+
+	/** Get the index of a pending object.
+	 * @return Index in objects array, or negative if not pending. */
+	private int pendingIndex(Name n) {
+		if(type == null || isAttribute() ||
+		  !type.name.equals(n.getTypePart()))
+			return -1;
+		String[] names = snapshot.names;
+		int i = Arrays.binarySearch(names, Math.max(pos, 0),
+			names.length, n.getObjectPart());
+		return (i >= 0 && !removed.get(i)) ? i : -1;
+	}
+
+	/** Check if an object has not been enumerated yet.  Notifications for
+	 * a pending object are not needed, since the current values will be
+	 * encoded when the cursor reaches it. */
+	boolean isPending(Name n) {
+		return pendingIndex(n) >= 0;
+	}
+
+	/** Check a REMOVE notification for an object.  The object will not
+	 * be enumerated after this is called.
+	 * @return true if the notification is not needed. */
+	boolean checkRemove(Name n) {
+		int i = pendingIndex(n);
+		if(i >= 0) {
+			removed.set(i);
+			return true;
+		} else
+			return false;
+	}
+
+	/** Enumerate until a deadline is reached, or the encoded data reaches
+	 * a byte limit.  At least one object is enumerated on each step.
+	 * @param enc Message encoder.
+	 * @param deadline Deadline (from System.nanoTime).
+	 * @param max_bytes Limit of encoded data (bytes).
+	 * @return true if the enumeration is complete. */
+	boolean step(MessageEncoder enc, long deadline, int max_bytes)
+		throws SonarException, IOException
+	{
+		if(type == null) {
+			namespace.enumerate(enc, name);
+			return true;
+		}
+		if(pos < 0) {
+			if(!isAttribute())
+				enc.encode(Message.TYPE, type.name);
+			pos = 0;
+		}
+		SonarObject[] objects = snapshot.objects;
+		while(pos < objects.length) {
+			if(!removed.get(pos))
+				enumerateObject(enc, objects[pos]);
+			pos++;
+			if(pos < objects.length &&
+			  (enc.getBuffer().position() >= max_bytes ||
+			   System.nanoTime() - deadline >= 0))
+			{
+				yielded = true;
+				return false;
+			}
+		}
+		if(!isAttribute()) {
+			// Notifications may have changed the current type
+			if(yielded)
+				enc.encode(Message.TYPE, type.name);
+			enc.encode(Message.TYPE);
+		}
+		return true;
+	}
+
+	/** Enumerate one object (or object attribute).  An object attribute
+	 * is only encoded if the object has not been removed, since the client
+	 * may have handled the REMOVE notification already. */
+	private void enumerateObject(MessageEncoder enc, SonarObject o)
+		throws SonarException, IOException
+	{
+		if(!isAttribute())
+			type.enumerateObject(enc, o);
+		else if(type.lookupObject(o.getName()) == o) {
+			type.enumerateAttribute(enc, o,
+				name.getAttributePart());
+		}
+	}
+}
@@ -0,0 +1,335 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * An event ring is a bounded queue of task processor events, with many
+ * producers and a single consumer.  The slots are allocated up front and
+ * reused, so posting an event does not allocate.
+ *
+ * A producer claims a slot, fills in the event fields, then publishes it.
+ * While the ring is full, producers wait for the consumer to release a
+ * slot, or try again later (see tryClaim).  Events posted by the consumer
+ * thread itself are queued separately (it cannot wait for itself), but
+ * still taken in the order posted: after any events already in the ring.
+ *
+ * @author agent
+ */
+final class EventRing {
+
+	/** Event types */
+	enum Type {
+		CONNECT,	// st, channel
+		DISCONNECT,	// conn
+		UPDATE,		// conn, msg, params
+		ADD_OBJECT,	// obj
+		REMOVE_OBJECT,	// obj
+		SET_ATTRIBUTE,	// obj, name
+		TASK		// task
+	}
+
+	/** One slot in the ring */
+	static final class Slot {
+
+		/** Sequence number.  A slot is free for the producer of
+		 * sequence n when this is n, and ready for the consumer when
+		 * this is n + 1. */
+		private volatile long seq;
+
+		/** Sequence claimed by the producer (-1 for consumer) */
+		private long claimed;
+
+		/** Sequence of the first ring event posted after this one
+		 * (consumer events only) */
+		private long after;
+
+		/** Event type */
+		Type type;
+
+		/** Client connection */
+		ConnectionImpl conn;
+
+		/** SONAR object */
+		SonarObject obj;
+
+		/** Attribute name */
+		String name;
+
+		/** Update message */
+		Message msg;
+
+		/** Update message parameters */
+		List<String> params;
+
+		/** Selector thread for a new connection */
+		SelectorThread st;
+
+		/** Channel for a new connection */
+		SocketChannel channel;
+
+		/** Generic task */
+		Runnable task;
+
+		/** Create a new slot */
+		private Slot(long s) {
+			seq = s;
+		}
+
+		/** Clear all event fields */
+		private void clear() {
+			type = null;
+			conn = null;
+			obj = null;
+			name = null;
+			msg = null;
+			params = null;
+			st = null;
+			channel = null;
+			task = null;
+		}
+	}
+
+	/** Maximum time to wait for a slot before checking again */
+	static private final long FULL_WAIT_NS =
+		TimeUnit.MILLISECONDS.toNanos(10);
+
+	/** Round up to a power of two */
+	static private int powerOfTwo(int n) {
+		int c = Integer.highestOneBit(Math.max(n, 2));
+		return (c < n) ? c << 1 : c;
+	}
+
+	/** Preallocated slots */
+	private final Slot[] slots;
+
+	/** Mask for slot index */
+	private final int mask;
+
+	/** Next sequence to claim */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** Next sequence to take (consumer only) */
+	private volatile long head = 0;
+
+	/** Events posted by the consumer thread (consumer only) */
+	private final ArrayDeque<Slot> local = new ArrayDeque<Slot>();
+
+	/** Free slots for events posted by the consumer (consumer only) */
+	private final ArrayDeque<Slot> local_free = new ArrayDeque<Slot>();
+
+	/** Lock for producers waiting on a full ring */
+	private final ReentrantLock full_lock = new ReentrantLock();
+
+	/** Condition signalled when a slot is released */
+	private final Condition not_full = full_lock.newCondition();
+
+	/** Number of producers waiting on a full ring */
+	private final AtomicInteger n_waiting = new AtomicInteger();
+
+	/** Consumer thread */
+	private volatile Thread consumer;
+
+	/** Flag to indicate the consumer is waiting for an event */
+	private volatile boolean waiting = false;
+
+	/** Maximum occupancy (high-water mark) */
+	private volatile long max_size = 0;
+
+	/** Count of times a producer waited on a full ring */
+	private final AtomicLong n_full = new AtomicLong();
+
+	/** Create a new event ring.
+	 * @param n Minimum capacity (rounded up to a power of two). */
+	EventRing(int n) {
+		slots = new Slot[powerOfTwo(n)];
+		mask = slots.length - 1;
+		for(int i = 0; i < slots.length; i++)
+			slots[i] = new Slot(i);
+	}
+
+	/** Set the consumer thread */
+	void setConsumer(Thread t) {
+		consumer = t;
+	}
+
+	/** Check if the current thread is the consumer */
+	boolean isConsumer() {
+		return Thread.currentThread() == consumer;
+	}
+
+	/** Get the capacity of the ring */
+	int getCapacity() {
+		return slots.length;
+	}
+
+	/** Get the number of events waiting in the ring */
+	long getSize() {
+		return Math.max(0, tail.get() - head);
+	}
+
+	/** Get the maximum number of events which have been waiting */
+	long getMaxSize() {
+		return max_size;
+	}
+
+	/** Get the count of times a producer waited on a full ring */
+	long getFullCount() {
+		return n_full.get();
+	}
+
+	/** Claim a slot for a new event.  This waits while the ring is full.
+	 * The slot must be published after the event fields are set. */
+	Slot claim() {
+		if(isConsumer())
+			return claimLocal();
+		long n = tail.getAndIncrement();
+		Slot s = slots[(int)(n & mask)];
+		if(s.seq != n)
+			waitFree(s, n);
+		claimed(s, n);
+		return s;
+	}
+
+	/** Try to claim a slot for a new event, without waiting.
+	 * @return Slot to publish, or null if the ring is full. */
+	Slot tryClaim() {
+		if(isConsumer())
+			return claimLocal();
+		while(true) {
+			long n = tail.get();
+			Slot s = slots[(int)(n & mask)];
+			if(s.seq != n) {
+				n_full.incrementAndGet();
+				return null;
+			}
+			if(tail.compareAndSet(n, n + 1)) {
+				claimed(s, n);
+				return s;
+			}
+		}
+	}
+
+	/** Claim a slot for an event posted by the consumer */
+	private Slot claimLocal() {
+		Slot s = local_free.poll();
+		if(s == null) {
+			s = new Slot(0);
+			s.claimed = -1;
+		}
+		return s;
+	}
+
+	/** Wait for the consumer to release a slot.  The sequence has been
+	 * claimed already, so this cannot give up (or be interrupted). */
+	private void waitFree(Slot s, long n) {
+		n_full.incrementAndGet();
+		boolean interrupted = false;
+		n_waiting.incrementAndGet();
+		full_lock.lock();
+		try {
+			while(s.seq != n) {
+				try {
+					not_full.awaitNanos(FULL_WAIT_NS);
+				}
+				catch(InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		finally {
+			full_lock.unlock();
+			n_waiting.decrementAndGet();
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/** Mark a slot as claimed for a sequence */
+	private void claimed(Slot s, long n) {
+		s.claimed = n;
+		long sz = n + 1 - head;
+		if(sz > max_size)
+			max_size = sz;
+	}
+
+	/** Publish a claimed slot to the consumer */
+	void publish(Slot s) {
+		if(s.claimed < 0) {
+			s.after = tail.get();
+			local.add(s);
+			return;
+		}
+		s.seq = s.claimed + 1;
+		if(waiting)
+			LockSupport.unpark(consumer);
+	}
+
+	/** Take the next event, waiting until one is published.  An event
+	 * posted by the consumer is taken after all ring events which were
+	 * claimed before it was posted.
+	 * This may only be called on the consumer thread. */
+	Slot take() {
+		long h = head;
+		Slot s = local.peek();
+		if(s != null && s.after <= h)
+			return local.poll();
+		s = slots[(int)(h & mask)];
+		while(s.seq != h + 1) {
+			waiting = true;
+			if(s.seq != h + 1)
+				LockSupport.park(this);
+			waiting = false;
+		}
+		return s;
+	}
+
+	/** Release a slot after its event has been handled.
+	 * This may only be called on the consumer thread. */
+	void release(Slot s) {
+		s.clear();
+		if(s.claimed < 0) {
+			local_free.add(s);
+			return;
+		}
+		long h = head;
+		head = h + 1;
+		s.seq = h + slots.length;
+		if(n_waiting.get() > 0)
+			signalFree();
+	}
+
+	/** Signal producers waiting for a free slot */
+	private void signalFree() {
+		full_lock.lock();
+		try {
+			not_full.signalAll();
+		}
+		finally {
+			full_lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import us.mn.state.dot.sonar.Message;
+
+/**
+ * A message gate keeps the messages from one client connection in order.
+ * Namespace updates (OBJECT, REMOVE and ATTRIBUTE) are handled on the Task
+ * Processor thread, but other messages are handled on the connection
+ * executor.  So a message which is not an update must wait at the gate
+ * until all earlier updates have been handled, and any later messages wait
+ * behind it.
+ *
+ * Messages may only be passed and released on the connection executor.
+ * Updates may be completed on any thread.
+ *
+ * @author agent
+ */
+final class MessageGate {
+
+	/** A message waiting at the gate */
+	static final class Entry {
+
+		/** Message type */
+		final Message msg;
+
+		/** Message parameters */
+		final List<String> params;
+
+		/** Create a new entry */
+		private Entry(Message m, List<String> p) {
+			msg = m;
+			params = p;
+		}
+	}
+
+	/** Check if a message updates the namespace */
+	static private boolean isUpdate(Message m) {
+		return ConnectionImpl.UPDATES.contains(m);
+	}
+
+	/** Messages waiting at the gate, in the order received */
+	private final ArrayDeque<Entry> waiting = new ArrayDeque<Entry>();
+
+	/** Count of updates which have passed, but are not complete */
+	private final AtomicInteger n_updates = new AtomicInteger();
+
+	/** Flag to indicate a message is waiting for updates to complete */
+	private volatile boolean blocked = false;
+
+	/** Check if a message can pass now.  The blocked flag is set before
+	 * checking the update count, so an update completed meanwhile will see
+	 * it (see complete). */
+	private boolean canPass(Message m) {
+		if(isUpdate(m))
+			return true;
+		blocked = true;
+		if(n_updates.get() > 0)
+			return false;
+		blocked = false;
+		return true;
+	}
+
+	/** Pass a message through the gate.  A message which cannot pass now
+	 * waits until it is released.
+	 * @param m Message type.
+	 * @param params Message parameters (copied if the message waits).
+	 * @return true if the message can be handled now. */
+	boolean pass(Message m, List<String> params) {
+		if(waiting.isEmpty() && canPass(m)) {
+			if(isUpdate(m))
+				n_updates.incrementAndGet();
+			return true;
+		}
+		// The decoder reuses the parameter list
+		waiting.add(new Entry(m, new ArrayList<String>(params)));
+		return false;
+	}
+
+	/** Release the next waiting message, if it can pass now.
+	 * @return Entry to handle, or null. */
+	Entry release() {
+		Entry e = waiting.peek();
+		if(e != null && canPass(e.msg)) {
+			waiting.poll();
+			if(isUpdate(e.msg))
+				n_updates.incrementAndGet();
+			return e;
+		} else
+			return null;
+	}
+
+	/** Complete an update which has passed the gate.
+	 * @return true if waiting messages should be released. */
+	boolean complete() {
+		return n_updates.decrementAndGet() == 0 && blocked;
+	}
+
+	/** Discard all waiting messages */
+	void clear() {
+		waiting.clear();
+		blocked = false;
+	}
+}
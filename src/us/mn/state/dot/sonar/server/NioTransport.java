@@ -0,0 +1,171 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.net.ssl.SSLException;
+import us.mn.state.dot.sonar.MessageDecoder;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.SSLState;
+
+/**
+ * A non-blocking transport performs socket I/O on a selector thread, and
+ * encrypts data with an SSL engine on the connection executor.
+ *
+ * @author Douglas Lau
+ * @author agent
+ */
+final class NioTransport implements Transport {
+
+	/** Client connection */
+	final ConnectionImpl connection;
+
+	/** Task processor */
+	private final TaskProcessor processor;
+
+	/** Selector thread for the socket channel */
+	private final SelectorThread selector_thread;
+
+	/** Selection key for the socket channel */
+	private final SelectionKey key;
+
+	/** Channel to client */
+	private final SocketChannel channel;
+
+	/** SSL state for encrypting network data */
+	private final SSLState state;
+
+	/** Interest ops to apply on the selector thread */
+	private volatile int interest = 0;
+
+	/** Flag to indicate an interest change is queued */
+	private final AtomicBoolean interest_queued = new AtomicBoolean();
+
+	/** Create a new non-blocking transport */
+	NioTransport(ConnectionImpl c, TaskProcessor p, SelectorThread st,
+		SocketChannel ch) throws SSLException, IOException
+	{
+		connection = c;
+		processor = p;
+		selector_thread = st;
+		key = st.keyFor(ch);
+		channel = ch;
+		state = new SSLState(c, p.createSSLEngine(),
+			p.getHandshakeExecutor());
+	}
+
+	/** Get the message encoder */
+	public MessageEncoder getEncoder() {
+		return state.encoder;
+	}
+
+	/** Get the message decoder */
+	public MessageDecoder getDecoder() {
+		return state.decoder;
+	}
+
+	/** Start transferring data */
+	public void start() {
+		key.attach(this);
+		// Enable OP_READ interest
+		disableWrite();
+	}
+
+	/** Read messages from the socket channel.
+	 * This may only be called on the selector thread. */
+	void doRead() throws IOException {
+		int nbytes;
+		ByteBuffer net_in = state.getNetInBuffer();
+		synchronized(net_in) {
+			nbytes = channel.read(net_in);
+		}
+		if(nbytes > 0)
+			processor.processMessages(connection);
+		else if(nbytes < 0)
+			throw new EOFException();
+	}
+
+	/** Write pending data to the socket channel.
+	 * This may only be called on the selector thread. */
+	void doWrite() throws IOException {
+		ByteBuffer net_out = state.getNetOutBuffer();
+		synchronized(net_out) {
+			net_out.flip();
+			channel.write(net_out);
+			if(!net_out.hasRemaining())
+				disableWrite();
+			net_out.compact();
+		}
+		processor.flush(connection);
+	}
+
+	/** Read received data for the decoder */
+	public boolean read() throws SSLException {
+		return state.doRead();
+	}
+
+	/** Start writing encoded data to the client */
+	public void write() throws SSLException {
+		if(state.shouldWrite())
+			state.doWrite();
+	}
+
+	/** Get the number of encoded bytes waiting to be written */
+	public int getPendingBytes() {
+		return state.encoder.getBuffer().position();
+	}
+
+	/** Enable writing data back to the client */
+	public void enableWrite() {
+		setInterest(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+	}
+
+	/** Disable writing data back to the client */
+	public void disableWrite() {
+		setInterest(SelectionKey.OP_READ);
+	}
+
+	/** Set the interest ops.  Only one change is queued with the
+	 * selector thread at a time; later changes replace the value. */
+	private void setInterest(int ops) {
+		interest = ops;
+		if(interest_queued.compareAndSet(false, true))
+			selector_thread.changeInterest(this);
+	}
+
+	/** Apply the interest ops to the selection key.
+	 * This may only be called on the selector thread. */
+	void applyInterest() {
+		interest_queued.set(false);
+		try {
+			key.interestOps(interest);
+		}
+		catch(CancelledKeyException e) {
+			// connection closed
+		}
+	}
+
+	/** Close the transport */
+	public void close() throws IOException {
+		key.cancel();
+		channel.close();
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.Properties;
+import us.mn.state.dot.sonar.ConfigurationError;
+
+/**
+ * An outbound policy controls what happens when a client connection cannot
+ * keep up with the data being sent to it.  A connection is "blocked" while
+ * the encoded data waiting to be written exceeds a byte limit.
+ *
+ * @author agent
+ */
+public class OutboundPolicy {
+
+	/** Action to take for attribute notifications while blocked */
+	static public enum Action {
+
+		/** Hold the latest value of each attribute until the
+		 * connection is no longer blocked */
+		CONFLATE,
+
+		/** Drop attribute notifications, and send the current
+		 * value of each dropped attribute when the connection is no
+		 * longer blocked */
+		DROP,
+
+		/** Disconnect the client */
+		DISCONNECT;
+
+		/** Lookup an action by name */
+		static public Action lookup(String n) {
+			for(Action a: values()) {
+				if(a.name().equalsIgnoreCase(n))
+					return a;
+			}
+			return null;
+		}
+	}
+
+	/** Default byte limit */
+	static private final int DEFAULT_BYTES = 1 << 14;
+
+	/** Default age limit (seconds) */
+	static private final int DEFAULT_AGE_SEC = 600;
+
+	/** Get the action property */
+	static private Action getAction(Properties p)
+		throws ConfigurationError
+	{
+		String v = p.getProperty("sonar.outbound.policy");
+		if(v == null)
+			return Action.CONFLATE;
+		Action a = Action.lookup(v.trim());
+		if(a != null)
+			return a;
+		else
+			throw new ConfigurationError("Invalid sonar.outbound.policy");
+	}
+
+	/** Action for attribute notifications while blocked */
+	public final Action action;
+
+	/** Encoded data (bytes) waiting to be written, above which a
+	 * connection is blocked */
+	public final int max_bytes;
+
+	/** Time (ms) a connection may stay blocked before being
+	 * disconnected (0 for no limit) */
+	public final long max_age_ms;
+
+	/** Create a new outbound policy */
+	public OutboundPolicy(Action a, int b, long ms) {
+		action = a;
+		max_bytes = b;
+		max_age_ms = ms;
+	}
+
+	/** Create an outbound policy from a set of properties */
+	public OutboundPolicy(Properties p) throws ConfigurationError {
+		this(getAction(p), TaskProcessor.intProperty(p,
+		     "sonar.outbound.bytes", DEFAULT_BYTES, 0),
+		     TaskProcessor.intProperty(p, "sonar.outbound.age",
+		     DEFAULT_AGE_SEC, 0) * 1000L);
+	}
+
+	/** Check if a connection has been blocked too long.
+	 * @param ms Time (ms) the connection has been blocked. */
+	public boolean isExpired(long ms) {
+		return max_age_ms > 0 && ms > max_age_ms;
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import us.mn.state.dot.sonar.Capability;
+import us.mn.state.dot.sonar.Namespace;
+import us.mn.state.dot.sonar.Privilege;
+import us.mn.state.dot.sonar.Role;
+import us.mn.state.dot.sonar.SonarObject;
+
+/**
+ * A permission cache stores access decisions for roles, along with a
+ * privilege matcher for each capability and operation.  Decisions depend
+ * on roles, capabilities and privileges, so the cache must be invalidated
+ * whenever one of those objects is changed.
+ *
+ * Lookups and stores do not lock.  Each invalidation replaces all cached
+ * decisions with a new, empty generation.  When a decision map is full, an
+ * arbitrary entry is evicted.
+ *
+ * @author agent
+ */
+public class PermissionCache {
+
+	/** Access operations */
+	static public enum Op {
+		READ, UPDATE, ADD, REMOVE;
+	}
+
+	/** Maximum number of decisions cached for each role and operation
+	 * (approximate, since stores may race) */
+	static private final int MAX_ENTRIES = 4096;
+
+	/** Check if a privilege allows an operation */
+	static private boolean isAllowed(Privilege p, Op op) {
+		switch(op) {
+		case READ:
+			return p.getPrivR();
+		case UPDATE:
+			return p.getPrivW();
+		case ADD:
+			return p.getPrivC();
+		case REMOVE:
+			return p.getPrivD();
+		default:
+			return false;
+		}
+	}
+
+	/** Map of names to decisions */
+	static private class DecisionMap
+		extends ConcurrentHashMap<String, Boolean>
+	{
+		/** Number of entries (ConcurrentHashMap.size may lock) */
+		private final AtomicInteger n_entries = new AtomicInteger();
+
+		/** Store a decision, evicting an entry if the map is full */
+		private void store(String n, boolean d) {
+			if(put(n, d) == null &&
+			   n_entries.incrementAndGet() > MAX_ENTRIES)
+			{
+				Iterator<String> it = keySet().iterator();
+				if(it.hasNext() && remove(it.next()) != null)
+					n_entries.decrementAndGet();
+			}
+		}
+	}
+
+	/** Decisions cached in one generation */
+	static private class Decisions {
+
+		/** Generation number */
+		private final int generation;
+
+		/** Mapping of roles to decision maps (one for each
+		 * operation) */
+		private final ConcurrentHashMap<Role, DecisionMap[]> roles =
+			new ConcurrentHashMap<Role, DecisionMap[]>();
+
+		/** Create decisions for a generation */
+		private Decisions(int g) {
+			generation = g;
+		}
+
+		/** Get the decision maps for a role, creating them if needed */
+		private DecisionMap[] getMaps(Role r) {
+			DecisionMap[] maps = roles.get(r);
+			if(maps == null) {
+				maps = new DecisionMap[Op.values().length];
+				for(int i = 0; i < maps.length; i++)
+					maps[i] = new DecisionMap();
+				DecisionMap[] m = roles.putIfAbsent(r, maps);
+				if(m != null)
+					maps = m;
+			}
+			return maps;
+		}
+	}
+
+	/** Decisions of the current generation, replaced on each
+	 * invalidation */
+	private volatile Decisions decisions = new Decisions(0);
+
+	/** Mapping of capabilities to matchers (one for each operation) */
+	private final ConcurrentHashMap<Capability, PrivilegeMatcher[]>
+		matchers =
+		new ConcurrentHashMap<Capability, PrivilegeMatcher[]>();
+
+	/** Mapping of privileges to capabilities when matchers were built */
+	private final ConcurrentHashMap<Privilege, Capability> priv_caps =
+		new ConcurrentHashMap<Privilege, Capability>();
+
+	/** Namespace containing privileges */
+	private final Namespace namespace;
+
+	/** Create a new permission cache */
+	public PermissionCache(Namespace ns) {
+		namespace = ns;
+	}
+
+	/** Get the current generation number.  This must be checked before
+	 * making a decision, and passed to store. */
+	public int getGeneration() {
+		return decisions.generation;
+	}
+
+	/** Lookup a cached decision.
+	 * @param r Role to check.
+	 * @param op Access operation.
+	 * @param n Name (path) to check.
+	 * @return Cached decision, or null if not cached. */
+	public Boolean lookup(Role r, Op op, String n) {
+		DecisionMap[] maps = decisions.roles.get(r);
+		return (maps != null) ? maps[op.ordinal()].get(n) : null;
+	}
+
+	/** Store a decision in the cache.  If the cache has been invalidated
+	 * since the generation was checked, the decision is discarded.  A
+	 * decision stored while an invalidation replaces the generation is
+	 * stored in the old one, which is discarded.
+	 * @param gen Generation when the decision was made. */
+	public void store(int gen, Role r, Op op, String n, boolean d) {
+		Decisions ds = decisions;
+		if(gen == ds.generation)
+			ds.getMaps(r)[op.ordinal()].store(n, d);
+	}
+
+	/** Get the privilege matcher for a capability and operation.  The
+	 * matcher is built from all privileges of the capability.  Matchers
+	 * built while the cache is invalidated are not kept. */
+	public PrivilegeMatcher getMatcher(Capability c, Op op) {
+		PrivilegeMatcher[] m = matchers.get(c);
+		if(m == null) {
+			int gen = getGeneration();
+			m = buildMatchers(c);
+			PrivilegeMatcher[] pm = matchers.putIfAbsent(c, m);
+			if(pm != null)
+				m = pm;
+			else if(gen != getGeneration())
+				matchers.remove(c, m);
+		}
+		return m[op.ordinal()];
+	}
+
+	/** Build privilege matchers for a capability */
+	private PrivilegeMatcher[] buildMatchers(Capability c) {
+		Op[] ops = Op.values();
+		ArrayList<List<String>> patterns =
+			new ArrayList<List<String>>(ops.length);
+		for(int i = 0; i < ops.length; i++)
+			patterns.add(new ArrayList<String>());
+		Iterator<SonarObject> it = namespace.iterator(
+			Privilege.SONAR_TYPE);
+		while(it.hasNext()) {
+			SonarObject so = it.next();
+			if(so instanceof Privilege) {
+				Privilege p = (Privilege)so;
+				if(p.getCapability() == c) {
+					priv_caps.put(p, c);
+					for(Op op: ops) {
+						if(isAllowed(p, op)) {
+							patterns.get(op.ordinal()).add(
+								p.getPattern());
+						}
+					}
+				}
+			}
+		}
+		PrivilegeMatcher[] m = new PrivilegeMatcher[ops.length];
+		for(int i = 0; i < ops.length; i++)
+			m[i] = new PrivilegeMatcher(patterns.get(i));
+		return m;
+	}
+
+	/** Invalidate all cached decisions */
+	public synchronized void invalidate() {
+		decisions = new Decisions(decisions.generation + 1);
+	}
+
+	/** Invalidate cached decisions and matchers for a capability */
+	public void invalidate(Capability c) {
+		invalidate();
+		matchers.remove(c);
+	}
+
+	/** Invalidate cached decisions and matchers for a privilege.  This
+	 * includes the capability it had when the matchers were built. */
+	public void invalidate(Privilege p) {
+		invalidate();
+		Capability c = priv_caps.remove(p);
+		if(c != null)
+			matchers.remove(c);
+		matchers.remove(p.getCapability());
+	}
+}
@@ -0,0 +1,456 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A privilege matcher combines a set of privilege patterns into one
+ * automaton, so a name can be matched against all of them in one pass.
+ *
+ * Patterns are compiled to a nondeterministic automaton, which is converted
+ * lazily to a deterministic one as names are matched.  Matching does not
+ * lock: deterministic states and their transitions are published with
+ * atomic operations, so threads may race to add the same transition, but
+ * never see a partial one.  Only a subset of
+ * regex syntax is supported: literals, '.', '*', '+', '?', '|' and groups.
+ * Any pattern using other syntax is matched with java.util.regex instead.
+ *
+ * @author agent
+ */
+public class PrivilegeMatcher {
+
+	/** Maximum number of deterministic states before resetting */
+	static private final int MAX_DSTATES = 4096;
+
+	/** Number of ASCII chars (with transition arrays) */
+	static private final int N_ASCII = 128;
+
+	/** Exception thrown for unsupported pattern syntax */
+	static private class UnsupportedSyntax extends Exception { }
+
+	/** Regex metacharacters (all other chars are literals) */
+	static private final String META_CHARS = "\\^$.|?*+()[]{}";
+
+	/** Check if a char is matched by '.' (any except line terminators) */
+	static private boolean isAnyChar(char c) {
+		return c != '\n' && c != '\r' && c != (char)0x85 &&
+		       c != (char)0x2028 && c != (char)0x2029;
+	}
+
+	/** Check if a char is a literal (not a metacharacter) */
+	static private boolean isLiteral(char c) {
+		return META_CHARS.indexOf(c) < 0;
+	}
+
+	/** Automaton fragment (start and end states) */
+	static private class Fragment {
+		private final int start;
+		private final int end;
+		private Fragment(int s, int e) {
+			start = s;
+			end = e;
+		}
+	}
+
+	/** Char matched by each state (0 for epsilon-only states) */
+	private final StringBuilder chr = new StringBuilder();
+
+	/** Flags for states matching any char */
+	private final ArrayList<Boolean> any = new ArrayList<Boolean>();
+
+	/** Next state after matching a char */
+	private final ArrayList<Integer> next = new ArrayList<Integer>();
+
+	/** Epsilon transitions for each state */
+	private final ArrayList<List<Integer>> eps =
+		new ArrayList<List<Integer>>();
+
+	/** Accepting states */
+	private final ArrayList<Integer> accepting = new ArrayList<Integer>();
+
+	/** Start state (with epsilon transitions to each pattern) */
+	private final int start;
+
+	/** Patterns which could not be compiled into the automaton */
+	private final ArrayList<Pattern> fallback = new ArrayList<Pattern>();
+
+	/** Compiled automaton (built after all patterns are added) */
+	private char[] s_chr;
+	private boolean[] s_any;
+	private int[] s_next;
+	private int[][] s_eps;
+	private boolean[] s_accept;
+
+	/** Deterministic state */
+	static private class DState {
+		private final int[] states;
+		private final boolean accept;
+
+		/** Transitions on ASCII chars */
+		private final AtomicReferenceArray<DState> ascii =
+			new AtomicReferenceArray<DState>(N_ASCII);
+
+		/** Transitions on other chars (copied on write) */
+		private final AtomicReference<HashMap<Character, DState>>
+			other =
+			new AtomicReference<HashMap<Character, DState>>();
+
+		private DState(int[] s, boolean a) {
+			states = s;
+			accept = a;
+		}
+
+		/** Get the transition on a char, or null if not known */
+		private DState getTransition(char c) {
+			if(c < N_ASCII)
+				return ascii.get(c);
+			HashMap<Character, DState> o = other.get();
+			return (o != null) ? o.get(c) : null;
+		}
+
+		/** Add a transition on a char */
+		private void addTransition(char c, DState t) {
+			if(c < N_ASCII) {
+				ascii.set(c, t);
+				return;
+			}
+			while(true) {
+				HashMap<Character, DState> o = other.get();
+				HashMap<Character, DState> m = (o != null)
+				      ? new HashMap<Character, DState>(o)
+				      : new HashMap<Character, DState>();
+				m.put(c, t);
+				if(other.compareAndSet(o, m))
+					return;
+			}
+		}
+	}
+
+	/** Key for looking up deterministic states */
+	static private class StateKey {
+		private final int[] states;
+		private final int hash;
+		private StateKey(int[] s) {
+			states = s;
+			hash = Arrays.hashCode(s);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o) {
+			return (o instanceof StateKey) &&
+			       Arrays.equals(states, ((StateKey)o).states);
+		}
+	}
+
+	/** Mapping of state sets to deterministic states.  The map is
+	 * replaced when there are too many states. */
+	private volatile ConcurrentHashMap<StateKey, DState> dstates;
+
+	/** Number of deterministic states in the map */
+	private final AtomicInteger n_dstates = new AtomicInteger();
+
+	/** Deterministic start state */
+	private volatile DState dstart;
+
+	/** Create a new privilege matcher.
+	 * @param patterns List of patterns to match. */
+	public PrivilegeMatcher(List<String> patterns) {
+		start = addState();
+		for(String p: patterns)
+			addPattern(p);
+		compile();
+	}
+
+	/** Add a pattern to the matcher */
+	private void addPattern(String p) {
+		int n_states = next.size();
+		try {
+			Parser parser = new Parser(p);
+			Fragment f = parser.parse();
+			eps.get(start).add(f.start);
+			accepting.add(f.end);
+		}
+		catch(UnsupportedSyntax e) {
+			truncate(n_states);
+			addFallback(p);
+		}
+	}
+
+	/** Add a fallback pattern.  Invalid patterns never match. */
+	private void addFallback(String p) {
+		try {
+			fallback.add(Pattern.compile(p));
+		}
+		catch(PatternSyntaxException e) {
+			TaskProcessor.DEBUG.log("Invalid pattern: " + p);
+		}
+	}
+
+	/** Remove all states after a failed pattern */
+	private void truncate(int n_states) {
+		chr.setLength(n_states);
+		while(next.size() > n_states) {
+			int i = next.size() - 1;
+			any.remove(i);
+			next.remove(i);
+			eps.remove(i);
+		}
+	}
+
+	/** Add a new state */
+	private int addState() {
+		chr.append('\0');
+		any.add(false);
+		next.add(-1);
+		eps.add(new ArrayList<Integer>(2));
+		return next.size() - 1;
+	}
+
+	/** Add an epsilon transition */
+	private void addEpsilon(int from, int to) {
+		eps.get(from).add(to);
+	}
+
+	/** Pattern parser (recursive descent) */
+	private class Parser {
+		private final String pat;
+		private int pos = 0;
+		private Parser(String p) {
+			pat = p;
+		}
+
+		/** Parse the whole pattern */
+		private Fragment parse() throws UnsupportedSyntax {
+			Fragment f = parseAlternation();
+			if(pos != pat.length())
+				throw new UnsupportedSyntax();
+			return f;
+		}
+
+		/** Parse alternation: concat ('|' concat)* */
+		private Fragment parseAlternation() throws UnsupportedSyntax {
+			Fragment f = parseConcat();
+			if(peek() != '|')
+				return f;
+			int s = addState();
+			int e = addState();
+			addEpsilon(s, f.start);
+			addEpsilon(f.end, e);
+			while(peek() == '|') {
+				pos++;
+				Fragment g = parseConcat();
+				addEpsilon(s, g.start);
+				addEpsilon(g.end, e);
+			}
+			return new Fragment(s, e);
+		}
+
+		/** Parse concatenation: repeat* */
+		private Fragment parseConcat() throws UnsupportedSyntax {
+			int s = addState();
+			int e = s;
+			while(pos < pat.length() && peek() != '|' &&
+			      peek() != ')')
+			{
+				Fragment f = parseRepeat();
+				addEpsilon(e, f.start);
+				e = f.end;
+			}
+			return new Fragment(s, e);
+		}
+
+		/** Parse repeat: atom ('*' | '+' | '?')? */
+		private Fragment parseRepeat() throws UnsupportedSyntax {
+			Fragment f = parseAtom();
+			char q = peek();
+			if(q != '*' && q != '+' && q != '?')
+				return f;
+			pos++;
+			// Reluctant or possessive quantifiers are not supported
+			char q2 = peek();
+			if(q2 == '*' || q2 == '+' || q2 == '?')
+				throw new UnsupportedSyntax();
+			int s = addState();
+			int e = addState();
+			addEpsilon(s, f.start);
+			addEpsilon(f.end, e);
+			if(q != '+')
+				addEpsilon(s, e);
+			if(q != '?')
+				addEpsilon(f.end, f.start);
+			return new Fragment(s, e);
+		}
+
+		/** Parse atom: literal | '.' | '(' alternation ')' */
+		private Fragment parseAtom() throws UnsupportedSyntax {
+			char c = peek();
+			pos++;
+			if(c == '(') {
+				Fragment f = parseAlternation();
+				if(peek() != ')')
+					throw new UnsupportedSyntax();
+				pos++;
+				return f;
+			}
+			int s = addState();
+			int e = addState();
+			if(c == '.')
+				any.set(s, true);
+			else if(isLiteral(c))
+				chr.setCharAt(s, c);
+			else
+				throw new UnsupportedSyntax();
+			next.set(s, e);
+			return new Fragment(s, e);
+		}
+
+		/** Peek at the next char in the pattern */
+		private char peek() {
+			return (pos < pat.length()) ? pat.charAt(pos) : '\0';
+		}
+	}
+
+	/** Compile the automaton into arrays */
+	private void compile() {
+		int n = next.size();
+		s_chr = chr.toString().toCharArray();
+		s_any = new boolean[n];
+		s_next = new int[n];
+		s_eps = new int[n][];
+		s_accept = new boolean[n];
+		for(int i = 0; i < n; i++) {
+			s_any[i] = any.get(i);
+			s_next[i] = next.get(i);
+			List<Integer> el = eps.get(i);
+			s_eps[i] = new int[el.size()];
+			for(int j = 0; j < s_eps[i].length; j++)
+				s_eps[i][j] = el.get(j);
+		}
+		for(int a: accepting)
+			s_accept[a] = true;
+		resetDStates();
+	}
+
+	/** Reset the deterministic states */
+	private void resetDStates() {
+		dstates = new ConcurrentHashMap<StateKey, DState>();
+		n_dstates.set(0);
+		dstart = lookupDState(closure(new int[] { start }));
+	}
+
+	/** Get the epsilon closure of a set of states */
+	private int[] closure(int[] states) {
+		boolean[] seen = new boolean[s_next.length];
+		int[] stack = new int[s_next.length];
+		int sp = 0;
+		for(int s: states) {
+			if(!seen[s]) {
+				seen[s] = true;
+				stack[sp++] = s;
+			}
+		}
+		while(sp > 0) {
+			int s = stack[--sp];
+			for(int t: s_eps[s]) {
+				if(!seen[t]) {
+					seen[t] = true;
+					stack[sp++] = t;
+				}
+			}
+		}
+		// Only keep states which can match a char or accept
+		int n = 0;
+		for(int s = 0; s < seen.length; s++) {
+			if(seen[s] && (s_next[s] >= 0 || s_accept[s]))
+				stack[n++] = s;
+		}
+		return Arrays.copyOf(stack, n);
+	}
+
+	/** Lookup (or create) a deterministic state */
+	private DState lookupDState(int[] states) {
+		ConcurrentHashMap<StateKey, DState> m = dstates;
+		StateKey k = new StateKey(states);
+		DState d = m.get(k);
+		if(d == null) {
+			boolean a = false;
+			for(int s: states)
+				a |= s_accept[s];
+			d = new DState(states, a);
+			DState o = m.putIfAbsent(k, d);
+			if(o != null)
+				return o;
+			n_dstates.incrementAndGet();
+		}
+		return d;
+	}
+
+	/** Get the transition from a deterministic state on a char */
+	private DState transition(DState d, char c) {
+		DState t = d.getTransition(c);
+		if(t != null)
+			return t;
+		int[] ns = new int[d.states.length];
+		int n = 0;
+		for(int s: d.states) {
+			if(s_next[s] >= 0 &&
+			   (s_any[s] ? isAnyChar(c) : s_chr[s] == c))
+				ns[n++] = s_next[s];
+		}
+		t = lookupDState(closure(Arrays.copyOf(ns, n)));
+		d.addTransition(c, t);
+		return t;
+	}
+
+	/** Check if a name (path) matches any pattern */
+	public boolean matches(String path) {
+		return matchesAutomaton(path) || matchesFallback(path);
+	}
+
+	/** Check if a path matches the automaton */
+	private boolean matchesAutomaton(String path) {
+		if(n_dstates.get() > MAX_DSTATES)
+			resetDStates();
+		DState d = dstart;
+		for(int i = 0; i < path.length(); i++) {
+			if(d.states.length == 0)
+				return false;
+			d = transition(d, path.charAt(i));
+		}
+		return d.accept;
+	}
+
+	/** Check if a path matches any fallback pattern */
+	private boolean matchesFallback(String path) {
+		for(Pattern p: fallback) {
+			if(p.matcher(path).matches())
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.Name;
+import us.mn.state.dot.sonar.SonarException;
+import us.mn.state.dot.sonar.SonarObject;
+import us.mn.state.dot.sonar.User;
+
+/**
+ * A resync cursor encodes the changes to one type since a journal sequence,
+ * in response to an ENUMERATE message with a sequence.  As with a type
+ * enumeration, each step is bounded by time and by the size of the encoded
+ * data.
+ *
+ * The current state of each changed object is encoded: a REMOVE message if
+ * it no longer exists, the whole object if it was added (or removed and
+ * added again), or just the changed attributes.  Notifications are sent as
+ * usual while resyncing, since the client ignores REMOVE messages for
+ * unknown objects.  A changed object which is removed before the cursor
+ * reaches it is skipped, since the REMOVE notification is sent.
+ *
+ * This class is not thread-safe; it may only be used on the connection
+ * executor.
+ *
+ * @author agent
+ */
+final class ResyncCursor extends EnumerationCursor {
+
+	/** SONAR namespace */
+	private final ServerNamespace namespace;
+
+	/** Type name */
+	private final String tname;
+
+	/** Changed object names, mapped to the names of changed attributes
+	 * (or null to encode the whole object) */
+	private final Map<String, Set<String>> changes;
+
+	/** Changed object names, in order of first change */
+	private final String[] onames;
+
+	/** Objects removed before the cursor reached them */
+	private final HashSet<String> removed = new HashSet<String>();
+
+	/** User to check read permission */
+	private final User user;
+
+	/** Address of client */
+	private final InetAddress address;
+
+	/** Index of next object to encode (-1 before starting) */
+	private int pos = -1;
+
+	/** Flag to indicate the cursor has yielded */
+	private boolean yielded = false;
+
+	/** Create a new resync cursor.
+	 * @param ns SONAR namespace.
+	 * @param n Type name.
+	 * @param c Changes from the journal.
+	 * @param u User logged in on the connection.
+	 * @param a Address of client. */
+	ResyncCursor(ServerNamespace ns, Name n, Map<String, Set<String>> c,
+		User u, InetAddress a)
+	{
+		super(ns, n, null);
+		namespace = ns;
+		tname = n.getTypePart();
+		changes = c;
+		onames = c.keySet().toArray(new String[0]);
+		user = u;
+		address = a;
+	}
+
+	/** Check a REMOVE notification for an object.  A changed object is
+	 * not encoded after this is called.
+	 * @return false, since the notification is always needed. */
+	@Override
+	boolean checkRemove(Name n) {
+		if(tname.equals(n.getTypePart()))
+			removed.add(n.getObjectPart());
+		return false;
+	}
+
+	/** Encode changes until a deadline is reached, or the encoded data
+	 * reaches a byte limit.  At least one object is encoded on each step.
+	 * @param enc Message encoder.
+	 * @param deadline Deadline (from System.nanoTime).
+	 * @param max_bytes Limit of encoded data (bytes).
+	 * @return true if the resync is complete. */
+	@Override
+	boolean step(MessageEncoder enc, long deadline, int max_bytes)
+		throws SonarException, IOException
+	{
+		if(pos < 0) {
+			enc.encode(Message.TYPE, tname);
+			pos = 0;
+		}
+		while(pos < onames.length) {
+			String o = onames[pos];
+			if(!removed.contains(o))
+				encodeChange(enc, o, changes.get(o));
+			pos++;
+			if(pos < onames.length &&
+			  (enc.getBuffer().position() >= max_bytes ||
+			   System.nanoTime() - deadline >= 0))
+			{
+				yielded = true;
+				return false;
+			}
+		}
+		// Notifications may have changed the current type
+		if(yielded)
+			enc.encode(Message.TYPE, tname);
+		enc.encode(Message.TYPE);
+		return true;
+	}
+
+	/** Encode the current state of one changed object.
+	 * @param enc Message encoder.
+	 * @param oname Object name.
+	 * @param attrs Names of changed attributes, or null to encode the
+	 *              whole object. */
+	private void encodeChange(MessageEncoder enc, String oname,
+		Set<String> attrs) throws SonarException, IOException
+	{
+		SonarObject o = namespace.lookupObject(tname, oname);
+		if(o == null) {
+			Name n = new Name(tname, oname);
+			enc.encode(Message.REMOVE, n.toString());
+		} else if(attrs == null)
+			namespace.enumerateObject(enc, o);
+		else {
+			for(String a: attrs) {
+				Name n = new Name(o, a);
+				if(namespace.canRead(n, user, address)) {
+					String[] v = namespace.getAttribute(n);
+					enc.encode(Message.ATTRIBUTE,
+						n.toString(), v);
+				}
+			}
+		}
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2012  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,33 +16,28 @@ package us.mn.state.dot.sonar.server;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.net.InetAddress;
-import java.net.InetSocketAddress;
 import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
-import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * The selector thread processes all data transfers with client connections.
+ * A selector thread performs socket I/O for a group of client connections.
+ * New connections are accepted by the accept thread, and registered with
+ * one of the selector threads.  Registrations and interest changes from
+ * other threads are queued, and applied on the selector thread before each
+ * select, with at most one wakeup per select.
  *
  * @author Douglas Lau
  */
 public final class SelectorThread extends Thread {
 
-	/** Create and configure a server socket channel */
-	static private ServerSocketChannel createChannel(int port)
-		throws IOException
-	{
-		ServerSocketChannel c = ServerSocketChannel.open();
-		c.configureBlocking(false);
-		InetAddress host = InetAddress.getByAddress(new byte[4]);
-		InetSocketAddress address = new InetSocketAddress(host, port);
-		c.socket().bind(address);
-		return c;
-	}
+	/** Time (ms) to wait before retrying to connect new channels */
+	static private final long CONNECT_RETRY_MS = 10;
 
 	/** Task processor */
 	private final TaskProcessor processor;
@@ -50,19 +45,60 @@ public final class SelectorThread extends Thread {
 	/** Selector for non-blocking I/O */
 	private final Selector selector;
 
-	/** Socket channel to listen for new client connections */
-	private final ServerSocketChannel channel;
+	/** Channels waiting to be registered with the selector */
+	private final ConcurrentLinkedQueue<SocketChannel> pending =
+		new ConcurrentLinkedQueue<SocketChannel>();
+
+	/** Registered channels waiting for room in the event ring.  This may
+	 * only be used on the selector thread. */
+	private final ArrayDeque<SocketChannel> connects =
+		new ArrayDeque<SocketChannel>();
+
+	/** Transports with pending interest changes */
+	private final ConcurrentLinkedQueue<NioTransport> interest =
+		new ConcurrentLinkedQueue<NioTransport>();
+
+	/** Flag to indicate a wakeup is pending for the current select */
+	private final AtomicBoolean wakeup_pending = new AtomicBoolean();
 
 	/** Create a new selector thread */
-	public SelectorThread(TaskProcessor tp, int port) throws IOException {
+	public SelectorThread(TaskProcessor tp, String name) throws IOException {
+		super(name);
 		processor = tp;
 		selector = Selector.open();
-		channel = createChannel(port);
-		channel.register(selector, SelectionKey.OP_ACCEPT);
 		setDaemon(true);
 		start();
 	}
 
+	/** Register a new client channel with the selector.  The channel is
+	 * registered on the selector thread, since registering blocks while
+	 * the selector is selecting. */
+	public void register(SocketChannel sc) {
+		pending.add(sc);
+		wakeup();
+	}
+
+	/** Queue an interest change for a transport.  It will be applied
+	 * before the next select. */
+	void changeInterest(NioTransport t) {
+		interest.add(t);
+		wakeup();
+	}
+
+	/** Wake up the selector, unless a wakeup is already pending or this
+	 * is the selector thread (which applies changes before selecting) */
+	private void wakeup() {
+		if(Thread.currentThread() != this &&
+		   wakeup_pending.compareAndSet(false, true))
+			selector.wakeup();
+	}
+
+	/** Get the selection key for a channel registered with the
+	 * selector */
+	SelectionKey keyFor(SocketChannel sc) {
+		return sc.keyFor(selector);
+	}
+
 	/** Selector loop to perfrom socket I/O */
 	public void run() {
 		while(true)
@@ -83,55 +119,83 @@ public final class SelectorThread extends Thread {
 
 	/** Select and perform I/O on ready channels */
 	private void _doSelect() throws IOException {
-		selector.select();
+		wakeup_pending.set(false);
+		registerPending();
+		scheduleConnects();
+		applyInterest();
+		if(connects.isEmpty())
+			selector.select();
+		else
+			selector.select(CONNECT_RETRY_MS);
 		Set<SelectionKey> readySet = selector.selectedKeys();
-		for(SelectionKey key: readySet) {
-			if(checkAccept(key))
-				continue;
+		for(SelectionKey key: readySet)
 			serviceClient(key);
-		}
 		readySet.clear();
 	}
 
-	/** Check if a new client is connecting */
-	private boolean checkAccept(SelectionKey key) {
-		try {
-			if(key.isAcceptable())
-				doAccept();
-			else
-				return false;
+	/** Register all pending channels with the selector */
+	private void registerPending() {
+		SocketChannel sc = pending.poll();
+		while(sc != null) {
+			try {
+				sc.register(selector, 0);
+				connects.add(sc);
+			}
+			catch(IOException e) {
+				TaskProcessor.DEBUG.log("Register error: " +
+					e.getMessage());
+				closeChannel(sc);
+			}
+			sc = pending.poll();
 		}
-		catch(CancelledKeyException e) {
-			processor.scheduleDisconnect(key);
+	}
+
+	/** Schedule registered channels to be connected.  The selector
+	 * thread must not wait for the Task Processor, so while the event ring
+	 * is full, new channels are not connected (or read) until a later
+	 * select. */
+	private void scheduleConnects() {
+		SocketChannel sc = connects.peek();
+		while(sc != null && processor.tryScheduleConnect(this, sc)) {
+			connects.poll();
+			sc = connects.peek();
 		}
-		catch(IOException e) {
-			System.err.println("SONAR: selector I/O error " +
-				e.getMessage());
-			e.printStackTrace();
+	}
+
+	/** Apply all pending interest changes */
+	private void applyInterest() {
+		NioTransport t = interest.poll();
+		while(t != null) {
+			t.applyInterest();
+			t = interest.poll();
 		}
-		return true;
 	}
 
-	/** Accept a new client connection */
-	private void doAccept() throws IOException {
-		SocketChannel sc = channel.accept();
-		sc.configureBlocking(false);
-		SelectionKey key = sc.register(selector, 0);
-		processor.scheduleConnect(key, sc);
+	/** Close a channel which could not be registered */
+	private void closeChannel(SocketChannel sc) {
+		try {
+			sc.close();
+		}
+		catch(IOException e) {
+			TaskProcessor.DEBUG.log("Close error: " +
+				e.getMessage());
+		}
 	}
 
 	/** Do any pending read/write on a client connection */
 	private void serviceClient(SelectionKey key) {
-		ConnectionImpl c = processor.lookupClient(key);
-		if(c == null) {
-			processor.scheduleDisconnect(key);
+		Object a = key.attachment();
+		if(!(a instanceof NioTransport)) {
+			key.cancel();
 			return;
 		}
+		NioTransport t = (NioTransport)a;
+		ConnectionImpl c = t.connection;
 		try {
 			if(key.isWritable())
-				c.doWrite();
+				t.doWrite();
 			if(key.isReadable())
-				c.doRead();
+				t.doRead();
 		}
 		catch(CancelledKeyException e) {
 			processor.scheduleDisconnect(c, "Key cancelled");
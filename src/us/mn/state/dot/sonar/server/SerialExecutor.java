@@ -0,0 +1,182 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import us.mn.state.dot.sched.ExceptionHandler;
+
+/**
+ * A serial executor runs tasks on a shared worker pool, one at a time.
+ * Tasks for different serial executors can run concurrently.  A task may
+ * run on any thread of the pool, but each task happens-before the next one.
+ *
+ * Tasks always run in the order they were submitted.  Each task has a work
+ * class, which only sets the priority of the executor on the worker pool:
+ * the executor is scheduled with the highest class of its waiting tasks.
+ * After a bulk task, the pool thread is yielded to other executors.
+ *
+ * @author agent
+ */
+public class SerialExecutor implements Executor {
+
+	/** Maximum number of tasks to run before yielding the pool thread */
+	static private final int MAX_BATCH = 64;
+
+	/** Worker pool */
+	private final WorkerPool pool;
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Queue of tasks waiting to run */
+	private final ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+
+	/** Work class of each waiting task (parallel to the task queue) */
+	private final ArrayDeque<WorkClass> classes =
+		new ArrayDeque<WorkClass>();
+
+	/** Number of waiting tasks of each work class */
+	private final int[] n_class = new int[WorkClass.values().length];
+
+	/** Work class the executor is scheduled with on the pool, or null if
+	 * it is not scheduled.  The runner may be submitted to the pool more
+	 * than once (to raise its class); extra runs do nothing. */
+	private WorkClass scheduled = null;
+
+	/** Flag to indicate tasks are running on a pool thread */
+	private boolean running = false;
+
+	/** Maximum number of queued tasks (high-water mark) */
+	private int max_queued = 0;
+
+	/** Runnable to perform queued tasks on the pool */
+	private final Runnable runner = new Runnable() {
+		public void run() {
+			runTasks();
+		}
+	};
+
+	/** Create a new serial executor */
+	SerialExecutor(WorkerPool p, ExceptionHandler h) {
+		pool = p;
+		handler = h;
+	}
+
+	/** Submit an interactive task */
+	public void execute(Runnable r) {
+		execute(WorkClass.INTERACTIVE, r);
+	}
+
+	/** Submit a task to be run after all previously submitted tasks */
+	public void execute(WorkClass wc, Runnable r) {
+		synchronized(tasks) {
+			tasks.add(r);
+			classes.add(wc);
+			n_class[wc.ordinal()]++;
+			max_queued = Math.max(max_queued, tasks.size());
+			if(running || !raiseClass(wc))
+				return;
+		}
+		pool.execute(wc, runner);
+	}
+
+	/** Raise the class the executor is scheduled with.
+	 * @return true if the runner must be submitted to the pool. */
+	private boolean raiseClass(WorkClass wc) {
+		if(scheduled == null || wc.compareTo(scheduled) < 0) {
+			scheduled = wc;
+			return true;
+		} else
+			return false;
+	}
+
+	/** Get the highest work class of the waiting tasks.
+	 * @return Work class, or null if no tasks are waiting. */
+	private WorkClass peekClass() {
+		for(WorkClass wc: WorkClass.values()) {
+			if(n_class[wc.ordinal()] > 0)
+				return wc;
+		}
+		return null;
+	}
+
+	/** Get the number of tasks waiting to run */
+	public int getQueued() {
+		synchronized(tasks) {
+			return tasks.size();
+		}
+	}
+
+	/** Get the maximum number of tasks which have been queued */
+	public int getMaxQueued() {
+		synchronized(tasks) {
+			return max_queued;
+		}
+	}
+
+	/** Run queued tasks (on a pool thread).  The executor is rescheduled
+	 * even if a task throws an Error, so later tasks still run. */
+	private void runTasks() {
+		synchronized(tasks) {
+			if(running || scheduled == null)
+				return;
+			running = true;
+			scheduled = null;
+		}
+		try {
+			runBatch();
+		}
+		finally {
+			reschedule();
+		}
+	}
+
+	/** Run a batch of queued tasks */
+	private void runBatch() {
+		for(int i = 0; i < MAX_BATCH; i++) {
+			Runnable r;
+			WorkClass wc;
+			synchronized(tasks) {
+				r = tasks.poll();
+				if(r == null)
+					return;
+				wc = classes.poll();
+				n_class[wc.ordinal()]--;
+			}
+			try {
+				r.run();
+			}
+			catch(RuntimeException e) {
+				handler.handle(e);
+			}
+			if(wc == WorkClass.BULK)
+				break;
+		}
+	}
+
+	/** Stop running, and submit the runner to the pool again if tasks
+	 * are waiting, so other executors have a turn first */
+	private void reschedule() {
+		WorkClass wc;
+		synchronized(tasks) {
+			running = false;
+			wc = peekClass();
+			if(wc == null || !raiseClass(wc))
+				return;
+		}
+		pool.execute(wc, runner);
+	}
+}
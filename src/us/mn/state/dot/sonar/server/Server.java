@@ -37,8 +37,42 @@ public final class Server {
 		}
 	}
 
-	/** Selector thread */
-	private final SelectorThread thread;
+	/** Get the number of selector threads from a set of properties */
+	static private int getSelectors(Properties p)
+		throws ConfigurationError
+	{
+		String s = p.getProperty("sonar.selector.threads");
+		if(s == null) {
+			int n = Runtime.getRuntime().availableProcessors();
+			return Math.max(1, n / 2);
+		}
+		try {
+			int n = Integer.parseInt(s.trim());
+			if(n > 0)
+				return n;
+		}
+		catch(NumberFormatException e) {
+			// fall through
+		}
+		throw new ConfigurationError("Invalid sonar.selector.threads");
+	}
+
+	/** Check if the blocking socket transport is selected in a set of
+	 * properties (instead of non-blocking selector threads) */
+	static private boolean isSocketTransport(Properties p)
+		throws ConfigurationError
+	{
+		String t = p.getProperty("sonar.transport", "nio").trim();
+		if(t.equals("nio"))
+			return false;
+		else if(t.equals("socket"))
+			return true;
+		else
+			throw new ConfigurationError("Invalid sonar.transport");
+	}
+
+	/** Accept thread */
+	private final AcceptThread thread;
 
 	/** Task processor */
 	private final TaskProcessor processor;
@@ -49,7 +83,9 @@ public final class Server {
 	{
 		int port = getPort(props);
 		processor = new TaskProcessor(n, props, am);
-		thread = new SelectorThread(processor, port);
+		int n_selectors = isSocketTransport(props) ? 0
+		                : getSelectors(props);
+		thread = new AcceptThread(processor, port, n_selectors);
 	}
 
 	/** Add an authentication provider */
@@ -57,7 +93,7 @@ public final class Server {
 		processor.addProvider(ap);
 	}
 
-	/** Join the selector thread */
+	/** Join the accept thread */
 	public void join() throws InterruptedException {
 		thread.join();
 	}
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,13 +17,16 @@ package us.mn.state.dot.sonar.server;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Iterator;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import us.mn.state.dot.sonar.Capability;
 import us.mn.state.dot.sonar.EmptyIterator;
 import us.mn.state.dot.sonar.Message;
 import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
+import us.mn.state.dot.sonar.Privilege;
+import us.mn.state.dot.sonar.Role;
 import us.mn.state.dot.sonar.SonarException;
 import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.sonar.User;
@@ -36,20 +39,38 @@ import us.mn.state.dot.sonar.User;
  */
 public class ServerNamespace extends Namespace {
 
-	/** All SONAR types are stored in the root of the namespace */
-	private final HashMap<String, TypeNode> root =
-		new HashMap<String, TypeNode>();
+	/** All SONAR types are stored in the root of the namespace.  Types
+	 * can be looked up without locking. */
+	private final ConcurrentHashMap<String, TypeNode> root =
+		new ConcurrentHashMap<String, TypeNode>();
 
-	/** Register a new type in the namespace */
+	/** Cache of access decisions */
+	private final PermissionCache perms = new PermissionCache(this);
+
+	/** Flag to enable caching attribute values of objects */
+	private volatile boolean cache_values = false;
+
+	/** Enable or disable caching attribute values of objects.  This
+	 * should be called before the server is started. */
+	void setCacheValues(boolean c) {
+		cache_values = c;
+		for(TypeNode t: root.values())
+			t.setCacheValues(c);
+	}
+
+	/** Register a new type in the namespace, unless another thread has
+	 * registered it first */
 	private TypeNode registerType(SonarObject o) {
-		return registerType(o.getTypeName(), o.getClass());
+		String n = o.getTypeName();
+		TypeNode node = new TypeNode(this, n, o.getClass());
+		node.setCacheValues(cache_values);
+		TypeNode t = root.putIfAbsent(n, node);
+		return (t != null) ? t : node;
 	}
 
 	/** Get a type node from the namespace */
 	private TypeNode _getTypeNode(String t) {
-		synchronized(root) {
-			return root.get(t);
-		}
+		return root.get(t);
 	}
 
 	/** Get a type node from the namespace */
@@ -76,7 +97,12 @@ public class ServerNamespace extends Namespace {
 	 * @return phantom object if one was created; null otherwise */
 	SonarObject setAttribute(Name name, String[] v) throws SonarException {
 		TypeNode t = getTypeNode(name);
-		return t.setValue(name, v);
+		try {
+			return t.setValue(name, v);
+		}
+		finally {
+			checkPermissions(t.lookupObject(name.getObjectPart()));
+		}
 	}
 
 	/** Set the value of an attribute on a phantom object.
@@ -112,10 +138,26 @@ public class ServerNamespace extends Namespace {
 			throw NamespaceError.NAME_INVALID;
 	}
 
+	/** Refresh the cached value of an attribute which has changed.
+	 * @return Current value of the attribute. */
+	String[] refreshAttribute(Name name) throws SonarException {
+		TypeNode t = getTypeNode(name);
+		SonarObject o = t.lookupObject(name.getObjectPart());
+		if(o != null)
+			return t.refreshValue(o, name.getAttributePart());
+		else
+			throw NamespaceError.NAME_INVALID;
+	}
+
 	/** Remove an object from the namespace */
 	void removeObject(SonarObject o) throws SonarException {
 		TypeNode n = getTypeNode(o);
-		n.removeObject(o);
+		try {
+			n.removeObject(o);
+		}
+		finally {
+			checkPermissions(o);
+		}
 	}
 
 	/** Lookup the object with the specified name */
@@ -130,10 +172,8 @@ public class ServerNamespace extends Namespace {
 
 	/** Enumerate the root of the namespace */
 	private void enumerateRoot(MessageEncoder enc) throws IOException {
-		synchronized(root) {
-			for(TypeNode t: root.values())
-				enc.encode(Message.TYPE, t.name);
-		}
+		for(TypeNode t: root.values())
+			enc.encode(Message.TYPE, t.name);
 		enc.encode(Message.TYPE);
 	}
 
@@ -195,23 +235,38 @@ public class ServerNamespace extends Namespace {
 			throw NamespaceError.NAME_INVALID;
 	}
 
+	/** Create a cursor to enumerate everything contained by a name.
+	 * Types (and type attributes) are enumerated in steps; anything else
+	 * is enumerated in a single step.
+	 * @param name Name to enumerate. */
+	EnumerationCursor createCursor(Name name) throws SonarException {
+		if(name.isType() || (name.isAttribute() &&
+		   name.getObjectPart().equals("")))
+		{
+			return new EnumerationCursor(this, name,
+				getTypeNode(name));
+		} else
+			return new EnumerationCursor(this, name, null);
+	}
+
 	/** Register a new type in the namespace */
 	public TypeNode registerType(String n, Class c) {
 		TypeNode node = new TypeNode(this, n, c);
-		synchronized(root) {
-			root.put(n, node);
-		}
+		node.setCacheValues(cache_values);
+		root.put(n, node);
 		return node;
 	}
 
 	/** Add an object into the namespace without storing */
 	public void addObject(SonarObject o) throws NamespaceError {
 		getTypeNode(o).addObject(o);
+		checkPermissions(o);
 	}
 
 	/** Store an object in the namespace */
 	public void storeObject(SonarObject o) throws SonarException {
 		getTypeNode(o).storeObject(o);
+		checkPermissions(o);
 	}
 
 	/** Create a new object */
@@ -225,7 +280,12 @@ public class ServerNamespace extends Namespace {
 	 * @param oname Sonar object name
 	 * @return Object from namespace or null if name does not exist */
 	public SonarObject lookupObject(String tname, String oname) {
-		return lookupObject(new Name(tname, oname));
+		if(oname != null) {
+			TypeNode t = _getTypeNode(tname);
+			if(t != null)
+				return t.lookupObject(oname);
+		}
+		return null;
 	}
 
 	/** Get an iterator for all objects of a type.
@@ -289,4 +349,81 @@ public class ServerNamespace extends Namespace {
 	public boolean canRemove(Name n, User u, InetAddress a) {
 		return canRemove(n, u);
 	}
+
+	/** Invalidate cached access decisions if an object affects them */
+	void checkPermissions(SonarObject o) {
+		if(o instanceof Privilege)
+			perms.invalidate((Privilege)o);
+		else if(o instanceof Capability)
+			perms.invalidate((Capability)o);
+		else if(o instanceof Role || o instanceof User)
+			perms.invalidate();
+	}
+
+	/** Invalidate all cached access decisions.  This must be called if
+	 * a user, role, capability or privilege is changed without using
+	 * the namespace or Server.setAttribute. */
+	public void invalidatePermissions() {
+		perms.invalidate();
+	}
+
+	/** Check if a user has access to a name, using cached decisions.
+	 * @param n Name to check.
+	 * @param u User to check.
+	 * @param op Access operation.
+	 * @return true if access is allowed; false otherwise. */
+	private boolean checkAccess(Name n, User u, PermissionCache.Op op) {
+		if(!u.getEnabled())
+			return false;
+		Role r = u.getRole();
+		if(r == null)
+			return false;
+		String path = n.toString();
+		Boolean d = perms.lookup(r, op, path);
+		if(d != null)
+			return d;
+		int gen = perms.getGeneration();
+		boolean a = checkAccessUncached(n, r, op);
+		perms.store(gen, r, op, path, a);
+		return a;
+	}
+
+	/** Check if a role has access to a name, without the cache.  Each
+	 * capability is checked with one privilege matcher. */
+	private boolean checkAccessUncached(Name n, Role r,
+		PermissionCache.Op op)
+	{
+		if(!r.getEnabled())
+			return false;
+		String path = n.toString();
+		for(Capability c: r.getCapabilities()) {
+			if(c.getEnabled() && perms.getMatcher(c, op).matches(path))
+				return true;
+		}
+		return false;
+	}
+
+	/** Check if a user has read privileges for a name */
+	@Override
+	public boolean canRead(Name n, User u) {
+		return checkAccess(n, u, PermissionCache.Op.READ);
+	}
+
+	/** Check if a user has update privileges for a name */
+	@Override
+	public boolean canUpdate(Name n, User u) {
+		return checkAccess(n, u, PermissionCache.Op.UPDATE);
+	}
+
+	/** Check if a user has add privileges for a name */
+	@Override
+	public boolean canAdd(Name n, User u) {
+		return checkAccess(n, u, PermissionCache.Op.ADD);
+	}
+
+	/** Check if a user has remove privileges for a name */
+	@Override
+	public boolean canRemove(Name n, User u) {
+		return checkAccess(n, u, PermissionCache.Op.REMOVE);
+	}
 }
@@ -0,0 +1,252 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ssl.SSLSocket;
+import us.mn.state.dot.sonar.MessageDecoder;
+import us.mn.state.dot.sonar.MessageEncoder;
+
+/**
+ * A socket transport performs blocking I/O on an SSL socket, with a reader
+ * and a writer thread for each connection.  Virtual threads are used when
+ * the JVM supports them (Java 21 or later).
+ *
+ * @author agent
+ */
+final class SocketTransport implements Transport {
+
+	/** Size of buffers for received and encoded data */
+	static private final int BUFFER_SIZE = 1 << 14;
+
+	/** Maximum number of received chunks waiting to be decoded */
+	static private final int MAX_CHUNKS = 16;
+
+	/** Prefix of socket thread names */
+	static private final String THREAD_PREFIX = "sonar_socket_";
+
+	/** Create a thread factory for virtual threads.
+	 * @return Thread factory, or null if not supported. */
+	static private ThreadFactory createVirtualFactory() {
+		try {
+			Class<?> bc = Class.forName("java.lang.Thread$Builder");
+			Object b = Thread.class.getMethod("ofVirtual").invoke(
+				null);
+			b = bc.getMethod("name", String.class, long.class)
+				.invoke(b, THREAD_PREFIX, 1L);
+			return (ThreadFactory)bc.getMethod("factory").invoke(b);
+		}
+		catch(ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/** Create a thread factory for socket threads */
+	static private ThreadFactory createFactory() {
+		ThreadFactory vf = createVirtualFactory();
+		if(vf != null)
+			return vf;
+		return new ThreadFactory() {
+			private final AtomicInteger n = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, THREAD_PREFIX +
+					n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/** Thread factory for socket threads */
+	static private final ThreadFactory FACTORY = createFactory();
+
+	/** Client connection */
+	private final ConnectionImpl connection;
+
+	/** Task processor */
+	private final TaskProcessor processor;
+
+	/** SSL socket to client */
+	private final SSLSocket socket;
+
+	/** Buffer for received data to decode */
+	private final ByteBuffer app_in = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/** Decoder for received messages */
+	private final MessageDecoder decoder;
+
+	/** Encoder for messages to send */
+	private final MessageEncoder encoder;
+
+	/** Chunks received by the reader thread */
+	private final LinkedBlockingQueue<byte[]> received =
+		new LinkedBlockingQueue<byte[]>(MAX_CHUNKS);
+
+	/** Received chunk partially copied to the input buffer */
+	private ByteBuffer chunk = null;
+
+	/** Chunks of encoded data waiting for the writer thread */
+	private final LinkedBlockingQueue<byte[]> sending =
+		new LinkedBlockingQueue<byte[]>();
+
+	/** Number of bytes waiting for the writer thread */
+	private final AtomicInteger n_sending = new AtomicInteger();
+
+	/** Reader thread */
+	private final Thread reader;
+
+	/** Writer thread */
+	private final Thread writer;
+
+	/** Create a new socket transport */
+	SocketTransport(ConnectionImpl c, TaskProcessor p, SSLSocket s)
+		throws IOException
+	{
+		connection = c;
+		processor = p;
+		socket = s;
+		decoder = new MessageDecoder(app_in);
+		encoder = new MessageEncoder(BUFFER_SIZE);
+		reader = FACTORY.newThread(new Runnable() {
+			public void run() {
+				doRead();
+			}
+		});
+		writer = FACTORY.newThread(new Runnable() {
+			public void run() {
+				doWrite();
+			}
+		});
+	}
+
+	/** Get the message encoder */
+	public MessageEncoder getEncoder() {
+		return encoder;
+	}
+
+	/** Get the message decoder */
+	public MessageDecoder getDecoder() {
+		return decoder;
+	}
+
+	/** Start the reader and writer threads */
+	public void start() {
+		reader.start();
+		writer.start();
+	}
+
+	/** Read from the socket until it is closed.
+	 * This may only be called on the reader thread. */
+	private void doRead() {
+		try {
+			InputStream in = socket.getInputStream();
+			byte[] buf = new byte[BUFFER_SIZE];
+			while(true) {
+				int n = in.read(buf);
+				if(n < 0)
+					throw new EOFException();
+				if(n > 0) {
+					received.put(Arrays.copyOf(buf, n));
+					processor.processMessages(connection);
+				}
+			}
+		}
+		catch(EOFException e) {
+			processor.scheduleDisconnect(connection, null);
+		}
+		catch(IOException e) {
+			processor.scheduleDisconnect(connection, "I/O error " +
+				e.getMessage());
+		}
+		catch(InterruptedException e) {
+			processor.scheduleDisconnect(connection, null);
+		}
+	}
+
+	/** Write encoded data to the socket until it is closed.  The
+	 * connection is flushed whenever the writer catches up, so that
+	 * paused work (enumeration) can resume.
+	 * This may only be called on the writer thread. */
+	private void doWrite() {
+		try {
+			OutputStream out = socket.getOutputStream();
+			while(true) {
+				byte[] data = sending.take();
+				out.write(data);
+				n_sending.addAndGet(-data.length);
+				if(sending.isEmpty())
+					processor.flush(connection);
+			}
+		}
+		catch(IOException e) {
+			processor.scheduleDisconnect(connection, "I/O error " +
+				e.getMessage());
+		}
+		catch(InterruptedException e) {
+			// transport closed
+		}
+	}
+
+	/** Copy received data to the input buffer */
+	public boolean read() {
+		while(app_in.hasRemaining()) {
+			if(chunk == null || !chunk.hasRemaining()) {
+				byte[] b = received.poll();
+				if(b == null)
+					break;
+				chunk = ByteBuffer.wrap(b);
+			}
+			int n = Math.min(chunk.remaining(), app_in.remaining());
+			app_in.put(chunk.array(), chunk.position(), n);
+			chunk.position(chunk.position() + n);
+		}
+		return app_in.position() > 0;
+	}
+
+	/** Pass encoded data to the writer thread */
+	public void write() {
+		if(encoder.hasData()) {
+			byte[] data = encoder.takeData();
+			n_sending.addAndGet(data.length);
+			sending.add(data);
+		}
+	}
+
+	/** Get the number of encoded bytes waiting to be written */
+	public int getPendingBytes() {
+		return encoder.getBuffer().position() + n_sending.get();
+	}
+
+	/** Enable writing (the writer thread is always ready) */
+	public void enableWrite() { }
+
+	/** Disable writing (the writer thread is always ready) */
+	public void disableWrite() { }
+
+	/** Close the transport */
+	public void close() throws IOException {
+		socket.close();
+		reader.interrupt();
+		writer.interrupt();
+	}
+}
@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2015  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -16,23 +16,31 @@ package us.mn.state.dot.sonar.server;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.net.Socket;
 import java.nio.channels.CancelledKeyException;
-import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.TimeoutException;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
 import us.mn.state.dot.sched.DebugLog;
 import us.mn.state.dot.sched.ExceptionHandler;
-import us.mn.state.dot.sched.Job;
-import us.mn.state.dot.sched.Scheduler;
 import us.mn.state.dot.sonar.ConfigurationError;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
 import us.mn.state.dot.sonar.Namespace;
 import us.mn.state.dot.sonar.NamespaceError;
@@ -42,7 +50,13 @@ import us.mn.state.dot.sonar.SonarObject;
 import us.mn.state.dot.sonar.User;
 
 /**
- * The task processor handles all SONAR tasks.
+ * The task processor handles all SONAR tasks.  Namespace updates and
+ * notifications are performed on the Task Processor thread, which takes
+ * events from a preallocated ring.  Work for each client connection (SSL,
+ * decoding, encoding and flushing) is performed on a connection executor,
+ * using a shared worker pool.  Control work (such as login responses) is
+ * favored over interactive work (notifications), which is favored over bulk
+ * work (enumeration).
  *
  * @author Douglas Lau
  */
@@ -71,9 +85,9 @@ public class TaskProcessor {
 	}
 
 	/** Get an array of protocol versions to enable */
-	static private String[] getProtocols(SSLEngine engine) {
+	static private String[] getProtocols(String[] supported) {
 		LinkedList<String> enabled = new LinkedList<String>();
-		for (String sp: engine.getSupportedProtocols()) {
+		for (String sp: supported) {
 			if (sp.startsWith("TLS"))
 				enabled.add(sp);
 		}
@@ -81,15 +95,78 @@ public class TaskProcessor {
 	}
 
 	/** Get an array of cipher suites which should be enabled */
-	static private String[] getCipherSuites(SSLEngine engine) {
+	static private String[] getCipherSuites(String[] suites) {
 		LinkedList<String> enabled = new LinkedList<String>();
-		for (String cs: engine.getEnabledCipherSuites()) {
+		for (String cs: suites) {
 			if (cs.startsWith("TLS_") && cs.contains("AES_128"))
 				enabled.add(cs);
 		}
 		return enabled.toArray(new String[0]);
 	}
 
+	/** Get an integer property.
+	 * @param p Properties.
+	 * @param n Name of property.
+	 * @param def Default value, if the property is not set.
+	 * @param min Minimum valid value.
+	 * @throws ConfigurationError if the value is not valid. */
+	static int intProperty(Properties p, String n, int def, int min)
+		throws ConfigurationError
+	{
+		String v = p.getProperty(n);
+		if(v == null)
+			return def;
+		try {
+			int i = Integer.parseInt(v.trim());
+			if(i >= min)
+				return i;
+		}
+		catch(NumberFormatException e) {
+			// fall through
+		}
+		throw new ConfigurationError("Invalid " + n);
+	}
+
+	/** Default capacity of the event ring */
+	static private final int EVENT_RING_SIZE = 1 << 14;
+
+	/** Default number of changes kept in the journal */
+	static private final int JOURNAL_SIZE = 1 << 16;
+
+	/** Check if attribute values should be cached in a set of
+	 * properties */
+	static private boolean isAttributeCache(Properties p)
+		throws ConfigurationError
+	{
+		String n = "sonar.attribute.cache";
+		String c = p.getProperty(n, "false").trim();
+		if(c.equals("false"))
+			return false;
+		else if(c.equals("true"))
+			return true;
+		else
+			throw new ConfigurationError("Invalid " + n);
+	}
+
+	/** Create a fixed thread pool of daemon threads.
+	 * @param n_threads Number of threads.
+	 * @param prefix Prefix of thread names. */
+	static private ExecutorService createPool(int n_threads,
+		final String prefix)
+	{
+		return Executors.newFixedThreadPool(n_threads,
+			new ThreadFactory()
+		{
+			private final AtomicInteger n = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, prefix +
+					n.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
 	/** SONAR namespace being served */
 	private final ServerNamespace namespace;
 
@@ -99,10 +176,8 @@ public class TaskProcessor {
 	/** SSL context */
 	private final SSLContext context;
 
-	/** Task processor scheduler */
-	private final Scheduler processor = new Scheduler("sonar_proc",
- 		new ExceptionHandler()
-	{
+	/** Exception handler for tasks */
+	private final ExceptionHandler handler = new ExceptionHandler() {
 		public boolean handle(Exception e) {
 			if(e instanceof CancelledKeyException)
 				DEBUG.log("Key already cancelled");
@@ -115,18 +190,53 @@ public class TaskProcessor {
 			}
 			return true;
 		}
-	});
+	};
+
+	/** Ring of events for the Task Processor thread */
+	private final EventRing ring;
+
+	/** Task Processor thread */
+	private final Thread processor = new Thread("sonar_proc") {
+		@Override
+		public void run() {
+			processEvents();
+		}
+	};
+
+	/** Worker pool for connection executors */
+	private final WorkerPool pool;
+
+	/** Thread pool for delegated SSL handshake tasks */
+	private final ExecutorService handshake_pool;
+
+	/** Lock for watching names.  The write lock is held on the Task
+	 * Processor thread while updating the namespace and looking up
+	 * connections to notify.  The read lock is held by a connection while
+	 * it starts watching a name and enumerates it, so that no update can
+	 * be missed (or sent twice). */
+	private final ReentrantReadWriteLock watch_lock =
+		new ReentrantReadWriteLock();
 
 	/** Authenticator for user credentials */
 	private final Authenticator authenticator;
 
-	/** Map of active client connections */
-	private final Map<SelectionKey, ConnectionImpl> clients =
-		new HashMap<SelectionKey, ConnectionImpl>();
+	/** Set of active client connections */
+	private final Set<ConnectionImpl> clients =
+		new HashSet<ConnectionImpl>();
+
+	/** Index of names watched by client connections */
+	private final WatchIndex watch_index = new WatchIndex();
+
+	/** Journal of recent changes, for clients to resync types.  Changes
+	 * are recorded while the watch write lock is held. */
+	private final ChangeJournal journal;
 
 	/** File to write session list */
 	private final String session_file;
 
+	/** Policy for clients which cannot keep up */
+	private final OutboundPolicy outbound_policy;
+
 	/** Create a task processor */
 	public TaskProcessor(ServerNamespace n, Properties props,
 		AccessMonitor am) throws IOException, ConfigurationError
@@ -142,6 +252,92 @@ public class TaskProcessor {
 				addProvider(new LDAPProvider(url));
 		}
 		session_file = props.getProperty("sonar.session.file");
+		outbound_policy = new OutboundPolicy(props);
+		journal = new ChangeJournal(intProperty(props,
+			"sonar.journal.size", JOURNAL_SIZE, 0));
+		namespace.setCacheValues(isAttributeCache(props));
+		int n_cpus = Runtime.getRuntime().availableProcessors();
+		pool = new WorkerPool(intProperty(props, "sonar.threads",
+			n_cpus, 1), "sonar_conn_", handler);
+		handshake_pool = createPool(intProperty(props,
+			"sonar.handshake.threads", n_cpus, 1), "sonar_ssl_");
+		ring = new EventRing(intProperty(props, "sonar.event.ring",
+			EVENT_RING_SIZE, 1));
+		ring.setConsumer(processor);
+		processor.setDaemon(true);
+		processor.start();
+	}
+
+	/** Get the number of connection tasks waiting for a worker */
+	public int getWorkerQueueDepth() {
+		return pool.getQueued();
+	}
+
+	/** Get the number of events waiting for the Task Processor */
+	public long getEventCount() {
+		return ring.getSize();
+	}
+
+	/** Get the maximum number of events which have been waiting for
+	 * the Task Processor */
+	public long getMaxEventCount() {
+		return ring.getMaxSize();
+	}
+
+	/** Get the count of times an event was delayed by a full ring */
+	public long getEventRingFullCount() {
+		return ring.getFullCount();
+	}
+
+	/** Process events on the Task Processor thread */
+	private void processEvents() {
+		while(true) {
+			EventRing.Slot s = ring.take();
+			try {
+				handleEvent(s);
+			}
+			catch(Exception e) {
+				handler.handle(e);
+			}
+			finally {
+				ring.release(s);
+			}
+		}
+	}
+
+	/** Handle one event on the Task Processor thread */
+	private void handleEvent(EventRing.Slot s) throws Exception {
+		switch(s.type) {
+		case CONNECT:
+			connect(s.st, s.channel);
+			break;
+		case DISCONNECT:
+			doRemoveClient(s.conn);
+			break;
+		case UPDATE:
+			doUpdate(s.conn, s.msg, s.params);
+			break;
+		case ADD_OBJECT:
+			doAddObject(s.obj);
+			break;
+		case REMOVE_OBJECT:
+			doRemoveObject(s.obj);
+			break;
+		case SET_ATTRIBUTE:
+			doSetAttribute(s.obj, s.name);
+			break;
+		case TASK:
+			s.task.run();
+			break;
+		}
+	}
+
+	/** Post a generic task to the Task Processor thread */
+	private void postTask(Runnable r) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.TASK;
+		s.task = r;
+		ring.publish(s);
 	}
 
 	/** Add an authentication provider */
@@ -154,66 +350,128 @@ public class TaskProcessor {
 		return namespace;
 	}
 
+	/** Get the index of watched names */
+	public WatchIndex getWatchIndex() {
+		return watch_index;
+	}
+
+	/** Get the journal of recent changes.  The watch lock must be held
+	 * while reading it. */
+	ChangeJournal getJournal() {
+		return journal;
+	}
+
+	/** Get the outbound policy for client connections */
+	public OutboundPolicy getOutboundPolicy() {
+		return outbound_policy;
+	}
+
+	/** Create a serial executor for a client connection */
+	public SerialExecutor createExecutor() {
+		return new SerialExecutor(pool, handler);
+	}
+
+	/** Get the executor for delegated SSL handshake tasks */
+	public ExecutorService getHandshakeExecutor() {
+		return handshake_pool;
+	}
+
+	/** Get the lock to hold while starting to watch a name */
+	public Lock getWatchLock() {
+		return watch_lock.readLock();
+	}
+
 	/** Get a list of active connections */
 	private List<ConnectionImpl> getConnectionList() {
 		LinkedList<ConnectionImpl> clist =
 			new LinkedList<ConnectionImpl>();
 		synchronized(clients) {
-			clist.addAll(clients.values());
+			clist.addAll(clients);
 		}
 		return clist;
 	}
 
-	/** Schedule a client connection */
-	public void scheduleConnect(final SelectionKey key,
-		final SocketChannel sc)
+	/** Schedule a client connection.  This waits while the event ring
+	 * is full.
+	 * @param st Selector thread for a non-blocking transport, or null
+	 *           for a blocking socket transport.
+	 * @param sc Channel to client. */
+	public void scheduleConnect(SelectorThread st, SocketChannel sc) {
+		postConnect(ring.claim(), st, sc);
+	}
+
+	/** Try to schedule a client connection, without waiting.
+	 * @param st Selector thread for a non-blocking transport.
+	 * @param sc Channel to client.
+	 * @return false if the event ring is full. */
+	boolean tryScheduleConnect(SelectorThread st, SocketChannel sc) {
+		EventRing.Slot s = ring.tryClaim();
+		if(s != null) {
+			postConnect(s, st, sc);
+			return true;
+		} else
+			return false;
+	}
+
+	/** Post a client connection event */
+	private void postConnect(EventRing.Slot s, SelectorThread st,
+		SocketChannel sc)
 	{
-		processor.addJob(new Job() {
-			public void perform() throws Exception {
-				try {
-					doConnect(key, sc);
-				}
-				catch(Exception e) {
-					// Don't leak channels
-					key.cancel();
-					sc.close();
-					throw e;
-				}
-			}
-		});
+		s.type = EventRing.Type.CONNECT;
+		s.st = st;
+		s.channel = sc;
+		ring.publish(s);
+	}
+
+	/** Create a client connection, closing the channel on error */
+	private void connect(SelectorThread st, SocketChannel sc)
+		throws IOException, NamespaceError
+	{
+		try {
+			doConnect(st, sc);
+		}
+		catch(IOException e) {
+			// Don't leak channels (or keys)
+			sc.close();
+			throw e;
+		}
+		catch(NamespaceError e) {
+			sc.close();
+			throw e;
+		}
 	}
 
 	/** Create a client connection */
-	private void doConnect(SelectionKey key, SocketChannel sc)
+	private void doConnect(SelectorThread st, SocketChannel sc)
 		throws IOException, NamespaceError
 	{
-		ConnectionImpl con = new ConnectionImpl(this, key, sc);
+		ConnectionImpl con = new ConnectionImpl(this, st, sc);
 		doAddObject(con);
 		access_monitor.connect(con.getName());
 		synchronized(clients) {
-			clients.put(key, con);
+			clients.add(con);
 		}
 		updateSessionList();
-		// Enable OP_READ interest
-		con.disableWrite();
+		con.start();
 	}
 
-	/** Schedule a disconnect on a selection key */
-	public void scheduleDisconnect(final SelectionKey key) {
-		processor.addJob(new Job() {
-			public void perform() {
-				disconnect(key);
-			}
-		});
+	/** Schedule removal of a disconnected client */
+	void removeClient(ConnectionImpl c) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.DISCONNECT;
+		s.conn = c;
+		ring.publish(s);
 	}
 
 	/** Schedule a connection to be disconnected */
 	public void scheduleDisconnect(final ConnectionImpl c,
 		final String msg)
 	{
-		processor.addJob(new Job() {
-			public void perform() {
+		c.execute(WorkClass.CONTROL, new Runnable() {
+			public void run() {
 				debugTask("Disconnect", c);
+				if(!c.isConnected())
+					return;
 				if(msg != null)
 					c.disconnect(msg);
 				else
@@ -222,15 +480,14 @@ public class TaskProcessor {
 		});
 	}
 
-	/** Disconnect the client associated with the selection key. */
-	void disconnect(SelectionKey key) {
-		key.cancel();
-		ConnectionImpl c;
+	/** Remove a disconnected client */
+	private void doRemoveClient(ConnectionImpl c) {
+		boolean removed;
 		synchronized(clients) {
-			c = clients.remove(key);
+			removed = clients.remove(c);
 		}
 		debugTask("Disconnecting", c);
-		if(c != null) {
+		if(removed) {
 			access_monitor.disconnect(c.getName(), c.getUserName());
 			updateSessionList();
 			scheduleRemoveObject(c);
@@ -262,23 +519,40 @@ public class TaskProcessor {
 	}
 
 	/** Process messages on one connection */
-	void processMessages(final ConnectionImpl c) {
-		processor.addJob(new Job() {
-			public void perform() {
-				debugTask("Processing messages", c);
-				c.processMessages();
-			}
-		});
+	void processMessages(ConnectionImpl c) {
+		debugTask("Processing messages", c);
+		c.scheduleProcessMessages();
+	}
+
+	/** Schedule a namespace update message from one connection */
+	void scheduleUpdate(ConnectionImpl c, Message m, List<String> params) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.UPDATE;
+		s.conn = c;
+		s.msg = m;
+		s.params = params;
+		ring.publish(s);
+	}
+
+	/** Process a namespace update message from one connection */
+	private void doUpdate(ConnectionImpl c, Message m,
+		List<String> params)
+	{
+		debugTask("Processing update", c);
+		Lock lock = watch_lock.writeLock();
+		lock.lock();
+		try {
+			c.processUpdate(m, params);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Flush outgoing data for one connection */
-	void flush(final ConnectionImpl c) {
-		processor.addJob(new Job() {
-			public void perform() {
-				debugTask("Flush", c);
-				c.flush();
-			}
-		});
+	void flush(ConnectionImpl c) {
+		debugTask("Flush", c);
+		c.scheduleFlush();
 	}
 
 	/** Authenticate a user connection */
@@ -293,25 +567,29 @@ public class TaskProcessor {
 
 	/** Finish a LOGIN */
 	void finishLogin(final ConnectionImpl c, final UserImpl u) {
-		processor.addJob(new Job() {
-			public void perform() {
+		postTask(new Runnable() {
+			public void run() {
 				debugTask("Finishing LOGIN", c);
 				access_monitor.authenticate(c.getName(),
 					u.getName());
-				scheduleSetAttribute(c, "user");
 				c.finishLogin(u);
+				scheduleSetAttribute(c, "user");
 			}
 		});
 	}
 
 	/** Fail a LOGIN */
 	void failLogin(final ConnectionImpl c, final String name) {
-		processor.addJob(new Job() {
-			public void perform() {
+		postTask(new Runnable() {
+			public void run() {
 				debugTask("Failing LOGIN", c);
 				access_monitor.failAuthentication(c.getName(),
 					name);
-				c.failLogin();
+				c.execute(WorkClass.CONTROL, new Runnable() {
+					public void run() {
+						c.failLogin();
+					}
+				});
 			}
 		});
 	}
@@ -329,8 +607,8 @@ public class TaskProcessor {
 	{
 		// Need to copy password, since authenticator will clear it
 		final String pwd = new String(pwd_new);
-		processor.addJob(new Job() {
-			public void perform() {
+		postTask(new Runnable() {
+			public void run() {
 				try {
 					u.doSetPassword(pwd);
 					debugTask("Finishing PASSWORD", c);
@@ -345,8 +623,8 @@ public class TaskProcessor {
 
 	/** Fail a PASSWORD */
 	void failPassword(final ConnectionImpl c, final String msg) {
-		processor.addJob(new Job() {
-			public void perform() {
+		c.execute(WorkClass.CONTROL, new Runnable() {
+			public void run() {
 				c.failPassword(msg);
 				debugTask("Failing PASSWORD", c);
 			}
@@ -356,79 +634,167 @@ public class TaskProcessor {
 	/** Create an SSL engine in the server context */
 	public SSLEngine createSSLEngine() {
 		SSLEngine engine = context.createSSLEngine();
-		engine.setEnabledProtocols(getProtocols(engine));
-		engine.setEnabledCipherSuites(getCipherSuites(engine));
+		engine.setEnabledProtocols(getProtocols(
+			engine.getSupportedProtocols()));
+		engine.setEnabledCipherSuites(getCipherSuites(
+			engine.getEnabledCipherSuites()));
 		engine.setUseClientMode(false);
 		return engine;
 	}
 
-	/** Lookup the client connection for a selection key */
-	public ConnectionImpl lookupClient(SelectionKey key) {
-		synchronized(clients) {
-			return clients.get(key);
-		}
+	/** Create an SSL socket in the server context, layered over a
+	 * connected socket */
+	public SSLSocket createSSLSocket(Socket s) throws IOException {
+		SSLSocket ss = (SSLSocket)context.getSocketFactory()
+			.createSocket(s, s.getInetAddress().getHostAddress(),
+			s.getPort(), true);
+		ss.setEnabledProtocols(getProtocols(
+			ss.getSupportedProtocols()));
+		ss.setEnabledCipherSuites(getCipherSuites(
+			ss.getEnabledCipherSuites()));
+		ss.setUseClientMode(false);
+		return ss;
 	}
 
-	/** Notify all connections watching a name of an object add. */
+	/** Initial size of buffer for encoding object notifications */
+	static private final int OBJECT_BUFFER_SIZE = 1024;
+
+	/** Notify all connections watching a name of an object add.  The
+	 * object is only encoded once, when the first watcher is found. */
 	private void notifyObject(SonarObject o) {
 		Name name = new Name(o);
-		List<ConnectionImpl> clist = getConnectionList();
-		for(ConnectionImpl c: clist)
-			c.notifyObject(name, o);
+		journal.record(Message.OBJECT, name);
+		byte[] msg = null;
+		List<ConnectionImpl> clist = watch_index.lookup(name);
+		for(ConnectionImpl c: clist) {
+			if(msg == null) {
+				try {
+					msg = encodeObject(o);
+				}
+				catch(SonarException e) {
+					scheduleDisconnect(c, "Notify error: " +
+						e.getMessage());
+					continue;
+				}
+				catch(IOException e) {
+					scheduleDisconnect(c, "Notify error: " +
+						e.getMessage());
+					continue;
+				}
+			}
+			notifyObject(c, name, msg);
+		}
 	}
 
-	/** Notify all connections watching a name of an attribute change. */
-	void notifyAttribute(Name name, String[] params) {
+	/** Notify one connection of a previously encoded object */
+	private void notifyObject(final ConnectionImpl c, final Name name,
+		final byte[] msg)
+	{
+		c.execute(new Runnable() {
+			public void run() {
+				c.notifyObject(name, msg);
+			}
+		});
+	}
+
+	/** Encode all readable attributes of an object */
+	private byte[] encodeObject(SonarObject o) throws SonarException,
+		IOException
+	{
+		MessageEncoder enc = new MessageEncoder(OBJECT_BUFFER_SIZE);
+		namespace.enumerateObject(enc, o);
+		return enc.takeData();
+	}
+
+	/** Notify all connections watching a name of an attribute change.
+	 * The message is encoded once and shared by all connections. */
+	void notifyAttribute(final Name name, String[] params) {
 		debugTask("Notify attribute", name.toString());
 		if(namespace.isReadable(name)) {
-			List<ConnectionImpl> clist = getConnectionList();
-			for(ConnectionImpl c: clist)
-				c.notifyAttribute(name, params);
+			journal.record(Message.ATTRIBUTE, name);
+			List<ConnectionImpl> clist = watch_index.lookup(name);
+			if(clist.isEmpty())
+				return;
+			final byte[] msg = MessageEncoder.encodeMessage(
+				Message.ATTRIBUTE, name.toString(), params);
+			for(final ConnectionImpl c: clist) {
+				c.execute(new Runnable() {
+					public void run() {
+						c.notifyAttribute(name, msg);
+					}
+				});
+			}
 		}
 	}
 
-	/** Notify all connections watching a name of an object remove. */
-	void notifyRemove(Name name) {
-		List<ConnectionImpl> clist = getConnectionList();
-		for(ConnectionImpl c: clist)
-			c.notifyRemove(name);
+	/** Notify all connections watching a name of an object remove.
+	 * The message is encoded once and shared by all connections. */
+	void notifyRemove(final Name name) {
+		journal.record(Message.REMOVE, name);
+		List<ConnectionImpl> clist = watch_index.lookup(name);
+		if(clist.isEmpty())
+			return;
+		final byte[] msg = MessageEncoder.encodeMessage(Message.REMOVE,
+			name.toString(), null);
+		for(final ConnectionImpl c: clist) {
+			c.execute(new Runnable() {
+				public void run() {
+					c.notifyRemove(name, msg);
+				}
+			});
+		}
 	}
 
 	/** Schedule an object to be added to the server's namespace */
-	public void scheduleAddObject(final SonarObject o) {
-		processor.addJob(new Job() {
-			public void perform() throws NamespaceError {
-				doAddObject(o);
-			}
-		});
+	public void scheduleAddObject(SonarObject o) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.ADD_OBJECT;
+		s.obj = o;
+		ring.publish(s);
 	}
 
 	/** Perform an add object task. */
 	private void doAddObject(SonarObject o) throws NamespaceError {
 		debugTask("Adding object", o.getName());
-		namespace.addObject(o);
-		notifyObject(o);
+		Lock lock = watch_lock.writeLock();
+		lock.lock();
+		try {
+			namespace.addObject(o);
+			notifyObject(o);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Create (synchronously) an object in the server's namespace */
 	public void storeObject(final SonarObject o) throws SonarException {
-		// Calling waitForCompletion will hang if we're
+		// Waiting for completion will hang if we're
 		// running on the task processor thread.
-		if(processor.isCurrentThread()) {
+		if(ring.isConsumer()) {
 			doStoreObject(o);
 			return;
 		}
-		Job job = new Job() {
-			public void perform() throws SonarException {
-				doStoreObject(o);
+		final CountDownLatch done = new CountDownLatch(1);
+		postTask(new Runnable() {
+			public void run() {
+				try {
+					doStoreObject(o);
+				}
+				catch(SonarException e) {
+					handler.handle(e);
+				}
+				finally {
+					done.countDown();
+				}
 			}
-		};
-		processor.addJob(job);
+		});
 		try {
 			// Only wait for 30 seconds before giving up
-			job.waitForCompletion(30000);
+			if(!done.await(30, TimeUnit.SECONDS))
+				throw new SonarException("Store timed out");
 		}
-		catch(TimeoutException e) {
+		catch(InterruptedException e) {
 			throw new SonarException(e);
 		}
 	}
@@ -436,33 +802,46 @@ public class TaskProcessor {
 	/** Store an object in the server's namespace. */
 	void doStoreObject(SonarObject o) throws SonarException {
 		debugTask("Storing object", o.getName());
-		namespace.storeObject(o);
-		notifyObject(o);
+		Lock lock = watch_lock.writeLock();
+		lock.lock();
+		try {
+			namespace.storeObject(o);
+			notifyObject(o);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Remove the specified object from the server's namespace */
-	public void scheduleRemoveObject(final SonarObject o) {
-		processor.addJob(new Job() {
-			public void perform() throws SonarException {
-				doRemoveObject(o);
-			}
-		});
+	public void scheduleRemoveObject(SonarObject o) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.REMOVE_OBJECT;
+		s.obj = o;
+		ring.publish(s);
 	}
 
 	/** Perform a remove object task. */
 	private void doRemoveObject(SonarObject o) throws SonarException {
 		debugTask("Removing object", o.getName());
-		notifyRemove(new Name(o));
-		namespace.removeObject(o);
+		Lock lock = watch_lock.writeLock();
+		lock.lock();
+		try {
+			notifyRemove(new Name(o));
+			namespace.removeObject(o);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	/** Set the specified attribute in the server's namespace */
-	public void scheduleSetAttribute(final SonarObject o, final String a) {
-		processor.addJob(new Job() {
-			public void perform() throws SonarException {
-				doSetAttribute(o, a);
-			}
-		});
+	public void scheduleSetAttribute(SonarObject o, String a) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.SET_ATTRIBUTE;
+		s.obj = o;
+		s.name = a;
+		ring.publish(s);
 	}
 
 	/** Perform a "set attribute" task. */
@@ -470,7 +849,15 @@ public class TaskProcessor {
 		throws SonarException
 	{
 		Name name = new Name(o, aname);
-		String[] v = namespace.getAttribute(name);
-		notifyAttribute(name, v);
+		namespace.checkPermissions(o);
+		Lock lock = watch_lock.writeLock();
+		lock.lock();
+		try {
+			String[] v = namespace.refreshAttribute(name);
+			notifyAttribute(name, v);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 }
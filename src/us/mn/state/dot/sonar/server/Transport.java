@@ -0,0 +1,60 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.io.IOException;
+import us.mn.state.dot.sonar.MessageDecoder;
+import us.mn.state.dot.sonar.MessageEncoder;
+
+/**
+ * A transport moves data between a client connection and the network.  The
+ * message encoder and decoder are owned by the connection executor, and may
+ * only be used there.
+ *
+ * @author agent
+ */
+interface Transport {
+
+	/** Get the message encoder */
+	MessageEncoder getEncoder();
+
+	/** Get the message decoder */
+	MessageDecoder getDecoder();
+
+	/** Start transferring data (after the connection is added) */
+	void start();
+
+	/** Read received data for the decoder.
+	 * This may only be called on the connection executor.
+	 * @return true if there is data to decode. */
+	boolean read() throws IOException;
+
+	/** Start writing encoded data to the client.
+	 * This may only be called on the connection executor. */
+	void write() throws IOException;
+
+	/** Get the number of encoded bytes waiting to be written.
+	 * This may only be called on the connection executor. */
+	int getPendingBytes();
+
+	/** Enable writing data back to the client */
+	void enableWrite();
+
+	/** Disable writing data back to the client */
+	void disableWrite();
+
+	/** Close the transport */
+	void close() throws IOException;
+}
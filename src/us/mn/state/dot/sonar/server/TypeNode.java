@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2006-2013  Minnesota Department of Transportation
+ * Copyright (C) 2006-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,9 +15,14 @@
 package us.mn.state.dot.sonar.server;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import us.mn.state.dot.sonar.Message;
 import us.mn.state.dot.sonar.MessageEncoder;
 import us.mn.state.dot.sonar.Name;
@@ -30,6 +35,11 @@ import us.mn.state.dot.sonar.SonarObject;
  * A type node represents the first-level nodes in the SONAR namespace. It
  * contains all information about a SONAR type.
  *
+ * Objects can be looked up and enumerated without locking.  Objects are
+ * added and removed with atomic map operations (putIfAbsent and remove),
+ * but storing, adding and removing objects must still be serialized: this
+ * is done on the Task Processor thread (or before the server is started).
+ *
  * @author Douglas Lau
  */
 public class TypeNode {
@@ -37,15 +47,99 @@ public class TypeNode {
 	/** Initial capacity of type hash */
 	static private final int INITIAL_CAPACITY = 256;
 
+	/** Comparator to sort objects by name */
+	static private final Comparator<SonarObject> NAME_COMPARATOR =
+		new Comparator<SonarObject>()
+	{
+		public int compare(SonarObject a, SonarObject b) {
+			return a.getName().compareTo(b.getName());
+		}
+	};
+
+	/** A snapshot is an immutable view of all objects of a type, sorted
+	 * by name.  Objects added or removed after the snapshot was taken are
+	 * not reflected, but attribute values are read from the objects. */
+	static final class Snapshot {
+
+		/** Sorted object names */
+		final String[] names;
+
+		/** Objects, in the same order as names */
+		final SonarObject[] objects;
+
+		/** Version of the children map when the snapshot was taken */
+		private final long version;
+
+		/** Create a new snapshot */
+		private Snapshot(SonarObject[] objs, long v) {
+			version = v;
+			Arrays.sort(objs, NAME_COMPARATOR);
+			objects = objs;
+			names = new String[objs.length];
+			for(int i = 0; i < objs.length; i++)
+				names[i] = objs[i].getName();
+		}
+	}
+
+	/** Cached values of the readable attributes of one object, already
+	 * marshalled.  A value read from a getter is only stored if there is
+	 * no value yet, but a changed value always replaces the old one.  So
+	 * a value read just before a change can never replace the new one. */
+	static private final class CachedValues {
+
+		/** Object with cached values */
+		final SonarObject obj;
+
+		/** Values, by readable attribute index (null if not cached) */
+		private final AtomicReferenceArray<String[]> values;
+
+		/** Create cached values for an object */
+		CachedValues(SonarObject o, int n_attrs) {
+			obj = o;
+			values = new AtomicReferenceArray<String[]>(n_attrs);
+		}
+
+		/** Get a cached value (or null) */
+		String[] get(int i) {
+			return values.get(i);
+		}
+
+		/** Store a value read from a getter, unless a value has been
+		 * stored meanwhile */
+		void fill(int i, String[] v) {
+			values.compareAndSet(i, null, v);
+		}
+
+		/** Store a changed value */
+		void set(int i, String[] v) {
+			values.set(i, v);
+		}
+	}
+
 	/** Type name */
 	public final String name;
 
-	/** All child objects of this type are put here.  Note: we still
-	 * synchronize on updates to this hash map to prevent inconsistency.
-	 * Synchronization is not needed to read or iterate over the map. */
+	/** All child objects of this type are put here */
 	private final ConcurrentHashMap<String, SonarObject> children =
-		new ConcurrentHashMap<String, SonarObject>(INITIAL_CAPACITY,
-		0.75f, 1);
+		new ConcurrentHashMap<String, SonarObject>(INITIAL_CAPACITY);
+
+	/** Cached attribute values of child objects, by object name.  An
+	 * entry is only added for an object in the children map. */
+	private final ConcurrentHashMap<String, CachedValues> cached =
+		new ConcurrentHashMap<String, CachedValues>(INITIAL_CAPACITY);
+
+	/** Flag to enable caching attribute values.  When disabled, values
+	 * are always read from the getters. */
+	private volatile boolean cache_values = false;
+
+	/** Version of the children map, which is incremented after an
+	 * object is added or removed */
+	private final AtomicLong version = new AtomicLong();
+
+	/** Latest snapshot of all child objects */
+	private final AtomicReference<Snapshot> snapshot =
+		new AtomicReference<Snapshot>(new Snapshot(new SonarObject[0],
+		0));
 
 	/** An attribute dispatcher can set and get attributes on objects */
 	private final AttributeDispatcher dispatcher;
@@ -63,45 +157,51 @@ public class TypeNode {
 		return dispatcher.createObject(name);
 	}
 
-	/** Store an object in the type node */
+	/** Store an object in the type node.  The name is checked before
+	 * the store callback, and added after it succeeds.
+	 * This may only be called on the Task Processor thread (or before the
+	 * server is started). */
 	public void storeObject(SonarObject o) throws SonarException {
 		String name = o.getName();
-		synchronized(children) {
-			if(children.containsKey(name))
-				throw NamespaceError.NAME_EXISTS;
-			dispatcher.storeObject(o);
-			children.put(name, o);
-		}
+		if(children.containsKey(name))
+			throw NamespaceError.NAME_EXISTS;
+		dispatcher.storeObject(o);
+		if(children.putIfAbsent(name, o) != null)
+			throw NamespaceError.NAME_EXISTS;
+		version.incrementAndGet();
 	}
 
-	/** Add an object to the type node without storing */
+	/** Add an object to the type node without storing.
+	 * This may only be called on the Task Processor thread (or before the
+	 * server is started). */
 	public void addObject(SonarObject o) throws NamespaceError {
-		String name = o.getName();
-		synchronized(children) {
-			if(children.containsKey(name))
-				throw NamespaceError.NAME_EXISTS;
-			else
-				children.put(name, o);
-		}
+		if(children.putIfAbsent(o.getName(), o) != null)
+			throw NamespaceError.NAME_EXISTS;
+		version.incrementAndGet();
 	}
 
-	/** Remove an object from the type node */
+	/** Remove an object from the type node.  The object is put back if
+	 * the destroy callback fails.
+	 * This may only be called on the Task Processor thread (or before the
+	 * server is started). */
 	public void removeObject(SonarObject o) throws SonarException {
 		String n = o.getName();
-		synchronized(children) {
-			SonarObject obj = children.remove(n);
-			if(obj == null)
-				throw NamespaceError.nameUnknown(n);
-			if(obj != o)
+		if(!children.remove(n, o)) {
+			if(children.containsKey(n))
 				throw NamespaceError.NAME_EXISTS;
-			try {
-				dispatcher.destroyObject(o);
-			}
-			catch(SonarException e) {
-				children.put(n, o);
-				throw e;
-			}
+			else
+				throw NamespaceError.nameUnknown(n);
+		}
+		version.incrementAndGet();
+		try {
+			dispatcher.destroyObject(o);
 		}
+		catch(SonarException e) {
+			children.put(n, o);
+			version.incrementAndGet();
+			throw e;
+		}
+		cached.remove(n);
 	}
 
 	/** Lookup an object from the given name */
@@ -109,16 +209,86 @@ public class TypeNode {
 		return children.get(n);
 	}
 
+	/** Enable or disable caching attribute values.  Values which are
+	 * changed without calling Server.setAttribute are sent stale to newly
+	 * enumerating clients while caching is enabled. */
+	void setCacheValues(boolean c) {
+		cache_values = c;
+		if(!c)
+			cached.clear();
+	}
+
 	/** Test if an attribute is readable */
 	public boolean isReadable(String a) {
 		return dispatcher.isReadable(a);
 	}
 
-	/** Get the value of an attribute */
+	/** Get the cached values of an object.
+	 * @return Cached values, or null if caching is disabled or the object
+	 *         is not a child of the type node. */
+	private CachedValues getCached(SonarObject o) {
+		if(!cache_values)
+			return null;
+		String n = o.getName();
+		CachedValues cv = cached.get(n);
+		if(cv != null && cv.obj == o)
+			return cv;
+		if(children.get(n) != o)
+			return null;
+		CachedValues ncv = new CachedValues(o,
+			dispatcher.getReadableAttributes().length);
+		boolean added = (cv != null)
+		              ? cached.replace(n, cv, ncv)
+		              : (cached.putIfAbsent(n, ncv) == null);
+		if(!added) {
+			// Another thread added cached values first
+			cv = cached.get(n);
+			return (cv != null && cv.obj == o) ? cv : null;
+		}
+		// Don't keep values of an object removed meanwhile
+		if(children.get(n) != o) {
+			cached.remove(n, ncv);
+			return null;
+		}
+		return ncv;
+	}
+
+	/** Get the value of an attribute.  If caching is enabled, values of
+	 * readable attributes are cached until changed (by setValue or
+	 * refreshValue), so the returned array must not be modified. */
 	public String[] getValue(SonarObject o, String a)
 		throws SonarException
 	{
-		return dispatcher.getValue(o, a);
+		int i = dispatcher.getReadableIndex(a);
+		CachedValues cv = (i >= 0) ? getCached(o) : null;
+		return (cv != null)
+		      ? getValue(cv, i, a)
+		      : dispatcher.getValue(o, a);
+	}
+
+	/** Get the value of an attribute from cached values */
+	private String[] getValue(CachedValues cv, int i, String a)
+		throws SonarException
+	{
+		String[] v = cv.get(i);
+		if(v == null) {
+			v = dispatcher.getValue(cv.obj, a);
+			cv.fill(i, v);
+		}
+		return v;
+	}
+
+	/** Refresh the cached value of an attribute which has changed.
+	 * @return Current value of the attribute. */
+	public String[] refreshValue(SonarObject o, String a)
+		throws SonarException
+	{
+		String[] v = dispatcher.getValue(o, a);
+		int i = dispatcher.getReadableIndex(a);
+		CachedValues cv = (i >= 0) ? getCached(o) : null;
+		if(cv != null)
+			cv.set(i, v);
+		return v;
 	}
 
 	/** Enumerate all attributes of the named object */
@@ -126,9 +296,14 @@ public class TypeNode {
 		throws SonarException, IOException
 	{
 		assert(o.getTypeName() == name);
+		CachedValues cv = getCached(o);
+		String[] attrs = dispatcher.getReadableAttributes();
 		boolean first = true;
-		for(String a: dispatcher.getReadableAttributes()) {
-			String[] v = getValue(o, a);
+		for(int i = 0; i < attrs.length; i++) {
+			String a = attrs[i];
+			String[] v = (cv != null)
+			           ? getValue(cv, i, a)
+			           : dispatcher.getValue(o, a);
 			if(first) {
 				a = new Name(o, a).toString();
 				first = false;
@@ -140,31 +315,32 @@ public class TypeNode {
 		enc.encode(Message.OBJECT, o.getName());
 	}
 
-	/** Enumerate all the objects of the type node */
+	/** Enumerate all the objects of the type node.  A snapshot is
+	 * enumerated, so objects can be added or removed meanwhile. */
 	public void enumerateObjects(MessageEncoder enc) throws SonarException,
 		IOException
 	{
-		// We must synchronize here to ensure that no objects are
-		// added or removed while enumerating
-		synchronized(children) {
-			for(SonarObject o: children.values())
-				enumerateObject(enc, o);
-		}
+		for(SonarObject o: getSnapshot().objects)
+			enumerateObject(enc, o);
 	}
 
-	/** Enumerate an attribute for all objects of the type node */
+	/** Enumerate an attribute for all objects of the type node.  A
+	 * snapshot is enumerated, so objects can be added or removed
+	 * meanwhile. */
 	public void enumerateAttribute(MessageEncoder enc, String aname)
 		throws SonarException, IOException
 	{
-		// We must synchronize here to ensure that no objects are
-		// added or removed while enumerating
-		synchronized(children) {
-			for(SonarObject o: children.values()) {
-				String a = new Name(o, aname).toString();
-				String[] v = dispatcher.getValue(o, aname);
-				enc.encode(Message.ATTRIBUTE, a, v);
-			}
-		}
+		for(SonarObject o: getSnapshot().objects)
+			enumerateAttribute(enc, o, aname);
+	}
+
+	/** Enumerate an attribute of one object */
+	public void enumerateAttribute(MessageEncoder enc, SonarObject o,
+		String aname) throws SonarException, IOException
+	{
+		String a = new Name(o, aname).toString();
+		String[] v = getValue(o, aname);
+		enc.encode(Message.ATTRIBUTE, a, v);
 	}
 
 	/** Set the value of an attribute.
@@ -179,6 +355,8 @@ public class TypeNode {
 		SonarObject o = children.get(oname);
 		if(o != null) {
 			dispatcher.setValue(o, aname, v);
+			if(isReadable(aname))
+				refreshValue(o, aname);
 			return null;
 		} else {
 			o = dispatcher.createObject(oname);
@@ -200,6 +378,21 @@ public class TypeNode {
 			children.values()).iterator();
 	}
 
+	/** Get a snapshot of all objects of the type.  The snapshot is
+	 * cached until an object is added or removed.  The version is read
+	 * before the objects are copied, so a snapshot contains at least all
+	 * changes up to its version. */
+	Snapshot getSnapshot() {
+		long v = version.get();
+		Snapshot snap = snapshot.get();
+		if(snap.version == v)
+			return snap;
+		Snapshot s = new Snapshot(children.values().toArray(
+			new SonarObject[0]), v);
+		snapshot.compareAndSet(snap, s);
+		return s;
+	}
+
 	/** Get the number of objects of this type */
 	public int size() {
 		return children.size();
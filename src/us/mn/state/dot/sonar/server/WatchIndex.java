@@ -0,0 +1,102 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import us.mn.state.dot.sonar.Name;
+
+/**
+ * A watch index maps watch entries to the connections which are watching
+ * them.  This is the inverse of the watching set in each connection, and
+ * allows a notification to find interested connections without checking
+ * every one of them.
+ *
+ * Entries are type names and object names (positive) or attribute names
+ * with no object specified (negative).  A connection is watching a name if
+ * it is watching the object, or if it is watching the type and is not
+ * ignoring the attribute.
+ *
+ * @author agent
+ */
+public class WatchIndex {
+
+	/** Map of watch entries to connections */
+	private final Map<String, Set<ConnectionImpl>> entries =
+		new HashMap<String, Set<ConnectionImpl>>();
+
+	/** Add a watch entry for a connection */
+	public void add(String entry, ConnectionImpl c) {
+		synchronized(entries) {
+			Set<ConnectionImpl> cons = entries.get(entry);
+			if(cons == null) {
+				cons = new LinkedHashSet<ConnectionImpl>();
+				entries.put(entry, cons);
+			}
+			cons.add(c);
+		}
+	}
+
+	/** Remove a watch entry for a connection */
+	public void remove(String entry, ConnectionImpl c) {
+		synchronized(entries) {
+			Set<ConnectionImpl> cons = entries.get(entry);
+			if(cons != null) {
+				cons.remove(c);
+				if(cons.isEmpty())
+					entries.remove(entry);
+			}
+		}
+	}
+
+	/** Get a list of connections watching a name */
+	public List<ConnectionImpl> lookup(Name name) {
+		String tname = name.getTypePart();
+		String oname = name.getObjectName();
+		String aname = name.isAttribute() ? name.getAttributeName()
+		                                  : null;
+		synchronized(entries) {
+			Set<ConnectionImpl> ocons = entries.get(oname);
+			Set<ConnectionImpl> tcons = entries.get(tname);
+			if(ocons == null && tcons == null)
+				return Collections.emptyList();
+			ArrayList<ConnectionImpl> clist =
+				new ArrayList<ConnectionImpl>();
+			// Object watch is highest priority (positive)
+			if(ocons != null)
+				clist.addAll(ocons);
+			// Attribute watch is middle priority (negative)
+			Set<ConnectionImpl> acons = (aname != null)
+			                          ? entries.get(aname)
+			                          : null;
+			// Type watch is lowest priority (positive)
+			if(tcons != null) {
+				for(ConnectionImpl c: tcons) {
+					if(acons != null && acons.contains(c))
+						continue;
+					if(ocons != null && ocons.contains(c))
+						continue;
+					clist.add(c);
+				}
+			}
+			return clist;
+		}
+	}
+}
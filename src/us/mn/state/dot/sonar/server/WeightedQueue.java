@@ -0,0 +1,90 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayDeque;
+
+/**
+ * A weighted queue holds items in a FIFO for each work class.  Items are
+ * taken in weighted round-robin order: in each round, a class gets as many
+ * turns as its weight, with higher priority classes first.  A class with
+ * nothing waiting gives up its turns, so no class can be starved.
+ *
+ * This class is not thread-safe.
+ *
+ * @author agent
+ */
+final class WeightedQueue<T> {
+
+	/** All work classes */
+	static private final WorkClass[] CLASSES = WorkClass.values();
+
+	/** Queue for each work class */
+	private final ArrayDeque<T>[] queues;
+
+	/** Turns remaining in the current round for each work class */
+	private final int[] turns = new int[CLASSES.length];
+
+	/** Total number of items */
+	private int size = 0;
+
+	/** Create a new weighted queue */
+	@SuppressWarnings("unchecked")
+	WeightedQueue() {
+		queues = new ArrayDeque[CLASSES.length];
+		for(int i = 0; i < CLASSES.length; i++)
+			queues[i] = new ArrayDeque<T>();
+		startRound();
+	}
+
+	/** Start a new round */
+	private void startRound() {
+		for(int i = 0; i < CLASSES.length; i++)
+			turns[i] = CLASSES[i].weight;
+	}
+
+	/** Add an item to the queue of a work class */
+	void add(WorkClass wc, T t) {
+		queues[wc.ordinal()].add(t);
+		size++;
+	}
+
+	/** Take the next item, or null if the queue is empty */
+	T poll() {
+		if(size == 0)
+			return null;
+		for(int r = 0; r < 2; r++) {
+			for(int i = 0; i < CLASSES.length; i++) {
+				if(turns[i] > 0 && !queues[i].isEmpty()) {
+					turns[i]--;
+					size--;
+					return queues[i].poll();
+				}
+			}
+			startRound();
+		}
+		return null;
+	}
+
+	/** Get the number of items in the queue */
+	int size() {
+		return size;
+	}
+
+	/** Check if the queue is empty */
+	boolean isEmpty() {
+		return size == 0;
+	}
+}
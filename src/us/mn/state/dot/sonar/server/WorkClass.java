@@ -0,0 +1,37 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+/**
+ * Work classes for connection tasks, in priority order.  A connection runs
+ * its own tasks in order, but is scheduled on the worker pool with the
+ * highest class of its waiting tasks.  When connections of all classes are
+ * waiting, each class gets a share of turns according to its weight.
+ *
+ * @author agent
+ */
+enum WorkClass {
+	CONTROL(4),	// login, password, errors, disconnect
+	INTERACTIVE(2),	// notifications and flushing
+	BULK(1);	// enumeration
+
+	/** Weight (turns per round) */
+	public final int weight;
+
+	/** Create a work class */
+	private WorkClass(int w) {
+		weight = w;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.concurrent.ExecutionException;
+import us.mn.state.dot.sched.ExceptionHandler;
+
+/**
+ * A worker pool is a fixed set of daemon threads which run tasks for
+ * connection executors.  Waiting tasks are taken from a weighted queue, so
+ * that bulk work cannot delay control or interactive work on other
+ * connections.  A worker thread keeps running after a task throws an
+ * Error, so the pool never shrinks.
+ *
+ * @author agent
+ */
+final class WorkerPool {
+
+	/** Queue of tasks waiting for a worker */
+	private final WeightedQueue<Runnable> queue =
+		new WeightedQueue<Runnable>();
+
+	/** Exception handler */
+	private final ExceptionHandler handler;
+
+	/** Create a new worker pool.
+	 * @param n_threads Number of threads.
+	 * @param prefix Prefix of thread names.
+	 * @param h Exception handler. */
+	WorkerPool(int n_threads, String prefix, ExceptionHandler h) {
+		handler = h;
+		for(int i = 1; i <= n_threads; i++) {
+			Thread t = new Thread(prefix + i) {
+				@Override
+				public void run() {
+					runTasks();
+				}
+			};
+			t.setDaemon(true);
+			t.start();
+		}
+	}
+
+	/** Submit a task to run on a worker thread */
+	void execute(WorkClass wc, Runnable r) {
+		synchronized(queue) {
+			queue.add(wc, r);
+			queue.notify();
+		}
+	}
+
+	/** Get the number of tasks waiting for a worker */
+	int getQueued() {
+		synchronized(queue) {
+			return queue.size();
+		}
+	}
+
+	/** Take the next task, waiting until one is submitted */
+	private Runnable take() throws InterruptedException {
+		synchronized(queue) {
+			while(queue.isEmpty())
+				queue.wait();
+			return queue.poll();
+		}
+	}
+
+	/** Run tasks until interrupted */
+	private void runTasks() {
+		while(true) {
+			try {
+				take().run();
+			}
+			catch(InterruptedException e) {
+				return;
+			}
+			catch(RuntimeException e) {
+				handler.handle(e);
+			}
+			catch(Throwable t) {
+				handler.handle(new ExecutionException(t));
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Message decoder test cases
+ *
+ * @author agent
+ */
+public class MessageDecoderTest extends TestCase {
+
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	static private final String RS =
+		String.valueOf(Message.RECORD_SEP.code);
+
+	static private final String US = String.valueOf(Message.UNIT_SEP.code);
+
+	/** Two messages, one with multi-byte characters */
+	static private final String MESSAGES = "a" + US +
+		"camera/C001/notes" + US + "caf\u00e9 \u2603 \ud83d\ude00" +
+		US + US + "x" + RS + "q" + RS;
+
+	/** constructor */
+	public MessageDecoderTest(String name) {
+		super(name);
+	}
+
+	/** Decode all complete messages in the buffer */
+	private void decodeAll(MessageDecoder dec, List<List<String>> msgs)
+		throws Exception
+	{
+		List<String> p = dec.decode();
+		while(p != null) {
+			msgs.add(new ArrayList<String>(p));
+			p = dec.decode();
+		}
+	}
+
+	/** Check that the expected messages were decoded */
+	private void checkMessages(List<List<String>> msgs) {
+		assertEquals(2, msgs.size());
+		List<String> a = msgs.get(0);
+		assertEquals(5, a.size());
+		assertEquals("a", a.get(0));
+		assertEquals("camera/C001/notes", a.get(1));
+		assertEquals("caf\u00e9 \u2603 \ud83d\ude00", a.get(2));
+		assertEquals("", a.get(3));
+		assertEquals("x", a.get(4));
+		List<String> q = msgs.get(1);
+		assertEquals(1, q.size());
+		assertEquals("q", q.get(0));
+	}
+
+	/** Test decoding complete messages */
+	public void testComplete() throws Exception {
+		ByteBuffer app_in = ByteBuffer.allocate(1024);
+		MessageDecoder dec = new MessageDecoder(app_in);
+		app_in.put(MESSAGES.getBytes(UTF8));
+		List<List<String>> msgs = new ArrayList<List<String>>();
+		decodeAll(dec, msgs);
+		checkMessages(msgs);
+		assertEquals(0, app_in.position());
+	}
+
+	/** Test decoding messages split at every possible byte */
+	public void testSplit() throws Exception {
+		byte[] b = MESSAGES.getBytes(UTF8);
+		for(int s = 1; s < b.length; s++) {
+			ByteBuffer app_in = ByteBuffer.allocate(1024);
+			MessageDecoder dec = new MessageDecoder(app_in);
+			List<List<String>> msgs = new ArrayList<List<String>>();
+			app_in.put(b, 0, s);
+			decodeAll(dec, msgs);
+			// Partial data must not be left in the buffer
+			assertEquals(0, app_in.position());
+			app_in.put(b, s, b.length - s);
+			decodeAll(dec, msgs);
+			checkMessages(msgs);
+		}
+	}
+
+	/** Test decoding one byte at a time from a direct buffer */
+	public void testDirect() throws Exception {
+		byte[] b = MESSAGES.getBytes(UTF8);
+		ByteBuffer app_in = ByteBuffer.allocateDirect(16);
+		MessageDecoder dec = new MessageDecoder(app_in);
+		List<List<String>> msgs = new ArrayList<List<String>>();
+		for(int i = 0; i < b.length; i++) {
+			app_in.put(b[i]);
+			decodeAll(dec, msgs);
+		}
+		checkMessages(msgs);
+	}
+}
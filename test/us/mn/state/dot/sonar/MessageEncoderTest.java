@@ -0,0 +1,112 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ * Message encoder test cases
+ *
+ * @author agent
+ */
+public class MessageEncoderTest extends TestCase {
+
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	static private final String RS =
+		String.valueOf(Message.RECORD_SEP.code);
+
+	static private final String US = String.valueOf(Message.UNIT_SEP.code);
+
+	/** constructor */
+	public MessageEncoderTest(String name) {
+		super(name);
+	}
+
+	/** Get the encoded bytes from an encoder */
+	private byte[] getBytes(MessageEncoder enc) {
+		ByteBuffer buf = enc.getBuffer();
+		return Arrays.copyOf(buf.array(), buf.position());
+	}
+
+	/** Check that an encoded message matches the expected string */
+	private void checkEncoded(MessageEncoder enc, String exp) {
+		assertTrue(Arrays.equals(exp.getBytes(UTF8), getBytes(enc)));
+		enc.getBuffer().clear();
+	}
+
+	/** Test encoding messages */
+	public void testEncode() throws Exception {
+		MessageEncoder enc = new MessageEncoder(0);
+		enc.encode(Message.TYPE);
+		checkEncoded(enc, "t" + RS);
+		enc.encode(Message.OBJECT, "camera/C001");
+		checkEncoded(enc, "o" + US + "camera/C001" + RS);
+		String v = "caf\u00e9 \u2603 \ud83d\ude00";
+		enc.encode(Message.ATTRIBUTE, "camera/C001/notes",
+			new String[] { v, "", "x" });
+		checkEncoded(enc, "a" + US + "camera/C001/notes" + US + v +
+			US + US + "x" + RS);
+	}
+
+	/** Test that separators are stripped from parameters */
+	public void testStrip() throws Exception {
+		MessageEncoder enc = new MessageEncoder(0);
+		enc.encode(Message.ATTRIBUTE, "dms/V1/msg",
+			new String[] { "a" + US + "b" + RS + "c\u00e9" + RS });
+		checkEncoded(enc, "a" + US + "dms/V1/msg" + US + "a b c\u00e9 " +
+			RS);
+	}
+
+	/** Test that unpaired surrogates are replaced */
+	public void testSurrogate() throws Exception {
+		MessageEncoder enc = new MessageEncoder(0);
+		enc.encode(Message.SHOW, "x\ud83dy\ude00");
+		checkEncoded(enc, "s" + US + "x?y?" + RS);
+	}
+
+	/** Test that the output buffer expands */
+	public void testExpand() throws Exception {
+		MessageEncoder enc = new MessageEncoder(0);
+		StringBuilder b = new StringBuilder();
+		for(int i = 0; i < 5000; i++)
+			b.append("\u2603");
+		String v = b.toString();
+		enc.encode(Message.SHOW, "first");
+		enc.encode(Message.SHOW, v);
+		checkEncoded(enc, "s" + US + "first" + RS + "s" + US + v + RS);
+	}
+
+	/** Test writing a shared encoded message */
+	public void testShared() throws Exception {
+		String v = "caf\u00e9";
+		byte[] msg = MessageEncoder.encodeMessage(Message.ATTRIBUTE,
+			"camera/C001/notes", new String[] { v });
+		MessageEncoder enc = new MessageEncoder(0);
+		enc.encode(Message.ATTRIBUTE, "camera/C001/notes",
+			new String[] { v });
+		assertTrue(Arrays.equals(msg, getBytes(enc)));
+		enc.getBuffer().clear();
+		enc.encode(Message.TYPE);
+		enc.write(msg);
+		byte[] data = enc.takeData();
+		assertFalse(enc.hasData());
+		assertEquals("t" + RS + "a" + US + "camera/C001/notes" + US + v +
+			RS, new String(data, UTF8));
+	}
+}
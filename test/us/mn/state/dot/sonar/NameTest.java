@@ -1,6 +1,6 @@
 /*
  * SONAR -- Simple Object Notification And Replication
- * Copyright (C) 2009  Minnesota Department of Transportation
+ * Copyright (C) 2009-2026  Minnesota Department of Transportation
  *
  * This program is free software; you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -15,6 +15,7 @@
 
 package us.mn.state.dot.sonar;
 
+import java.util.Arrays;
 import junit.framework.TestCase;
 import us.mn.state.dot.sonar.Name;
 
@@ -45,4 +46,75 @@ public class NameTest extends TestCase {
 		assertTrue(n.getObjectPart().equals("aaa"));
 		assertTrue(n.getAttributePart().equals(""));
 	}
+
+	/** Paths to check against String.split */
+	static private final String[] PATHS = {
+		"", "/", "type", "type/", "/obj", "a//b", "///", "a/b/c",
+		"a/b/c/", "a//", "//c", "a/b/c/d", "caf\u00e9/\u2603/x",
+	};
+
+	/** Split a path the way Name did with String.split */
+	static private String[] split(String p) {
+		return (p.length() < 1) ? new String[0] : p.split(Name.SEP);
+	}
+
+	/** Get one part of a split path */
+	static private String part(String[] parts, int i) {
+		return (parts.length > i) ? parts[i] : "";
+	}
+
+	/** Names split the same way as String.split */
+	public void testSplit() {
+		for(String p: PATHS) {
+			Name n = new Name(p);
+			String[] parts = split(p);
+			assertTrue(p, Arrays.equals(parts, n.parts));
+			assertEquals(p, part(parts, 0), n.getTypePart());
+			assertEquals(p, part(parts, 1), n.getObjectPart());
+			assertEquals(p, part(parts, 2), n.getAttributePart());
+			assertEquals(p, part(parts, 0) + "/" + part(parts, 1),
+				n.getObjectName());
+			assertEquals(p, part(parts, 0) + "//" + part(parts, 2),
+				n.getAttributeName());
+			assertEquals(p, parts.length == 0, n.isRoot());
+			assertEquals(p, parts.length == 1, n.isType());
+			assertEquals(p, parts.length == 2, n.isObject());
+			assertEquals(p, parts.length == 3, n.isAttribute());
+		}
+	}
+
+	/** Interned names are equal to new names with the same path */
+	public void testIntern() {
+		for(String p: PATHS) {
+			Name n = Name.intern(p);
+			assertEquals(p, n.toString());
+			assertEquals(n, new Name(p));
+			assertEquals(new Name(p), n);
+			assertEquals(new Name(p).hashCode(), n.hashCode());
+			assertSame(n, Name.intern(p));
+		}
+		assertFalse(new Name("a/b").equals(new Name("a/c")));
+		assertFalse(new Name("a/b").equals("a/b"));
+	}
+
+	/** Paths in the same pool slot still intern to the correct path */
+	public void testInternCollision() {
+		// "Aa" and "BB" have the same hash code
+		String a = "type/Aa";
+		String b = "type/BB";
+		assertEquals(a.hashCode(), b.hashCode());
+		for(int i = 0; i < 3; i++) {
+			assertEquals(a, Name.intern(a).toString());
+			assertEquals(b, Name.intern(b).toString());
+			assertEquals("Aa", Name.intern(a).getObjectPart());
+			assertEquals("BB", Name.intern(b).getObjectPart());
+		}
+		// More paths than pool slots
+		for(int i = 0; i < 10000; i++) {
+			String p = "type/obj_" + i + "/attr";
+			Name n = Name.intern(p);
+			assertEquals(p, n.toString());
+			assertEquals("obj_" + i, n.getObjectPart());
+		}
+	}
 }
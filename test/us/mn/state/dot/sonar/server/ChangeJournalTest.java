@@ -0,0 +1,128 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.Name;
+
+/**
+ * Change journal test cases
+ *
+ * @author agent
+ */
+public class ChangeJournalTest extends TestCase {
+
+	/** Create a set of attribute names */
+	static private Set<String> attrs(String... a) {
+		return new LinkedHashSet<String>(Arrays.asList(a));
+	}
+
+	/** Record attribute changes for objects */
+	static private void record(ChangeJournal j, int n) {
+		for(int i = 0; i < n; i++) {
+			j.record(Message.ATTRIBUTE,
+				new Name("testobj", "name_" + i, "notes"));
+		}
+	}
+
+	/** constructor */
+	public ChangeJournalTest(String name) {
+		super(name);
+	}
+
+	/** Only sequences from the oldest kept change up to the next change
+	 * are contained */
+	public void testContainsBounds() {
+		ChangeJournal j = new ChangeJournal(4);
+		long s = j.getSequence();
+		assertTrue(j.contains(s));
+		assertFalse(j.contains(s - 1));
+		assertFalse(j.contains(s + 1));
+		record(j, 3);
+		assertEquals(s + 3, j.getSequence());
+		assertTrue(j.contains(s));
+		assertTrue(j.contains(s + 3));
+		assertFalse(j.contains(s + 4));
+		record(j, 3);
+		assertFalse(j.contains(s + 1));
+		assertTrue(j.contains(s + 2));
+		assertTrue(j.contains(s + 6));
+		assertFalse(j.contains(s + 7));
+	}
+
+	/** Sequences from before the journal was created are not contained */
+	public void testOldSequence() {
+		ChangeJournal j = new ChangeJournal(4);
+		long s = j.getSequence();
+		assertFalse(j.contains(0));
+		assertFalse(j.contains(s - 4));
+	}
+
+	/** Changes which wrap around the ring are read correctly, and
+	 * overwritten changes are detected */
+	public void testWraparound() {
+		ChangeJournal j = new ChangeJournal(4);
+		long s = j.getSequence();
+		record(j, 6);
+		Map<String, Set<String>> c = j.getChanges("testobj", s + 2,
+			s + 6);
+		assertNotNull(c);
+		assertEquals(Arrays.asList("name_2", "name_3", "name_4",
+			"name_5"), Arrays.asList(c.keySet().toArray()));
+		assertEquals(attrs("notes"), c.get("name_5"));
+		assertNull(j.getChanges("testobj", s, s + 6));
+		assertNull(j.getChanges("testobj", s + 1, s + 6));
+	}
+
+	/** Changes are merged by object, and other types are skipped */
+	public void testGetChanges() {
+		ChangeJournal j = new ChangeJournal(16);
+		long s = j.getSequence();
+		j.record(Message.ATTRIBUTE, new Name("testobj", "b", "notes"));
+		j.record(Message.ATTRIBUTE, new Name("other", "a", "notes"));
+		j.record(Message.ATTRIBUTE,
+			new Name("testobj", "a", "location"));
+		j.record(Message.ATTRIBUTE,
+			new Name("testobj", "b", "location"));
+		j.record(Message.OBJECT, new Name("testobj", "c"));
+		j.record(Message.ATTRIBUTE, new Name("testobj", "c", "notes"));
+		j.record(Message.ATTRIBUTE, new Name("testobj", "a", "notes"));
+		j.record(Message.REMOVE, new Name("testobj", "a"));
+		Map<String, Set<String>> c = j.getChanges("testobj", s,
+			j.getSequence());
+		assertEquals(Arrays.asList("b", "a", "c"),
+			Arrays.asList(c.keySet().toArray()));
+		assertEquals(attrs("notes", "location"), c.get("b"));
+		assertTrue(c.containsKey("a"));
+		assertNull(c.get("a"));
+		assertNull(c.get("c"));
+		assertTrue(j.getChanges("testobj", s + 8, s + 8).isEmpty());
+	}
+
+	/** An empty journal contains only the next sequence */
+	public void testEmpty() {
+		ChangeJournal j = new ChangeJournal(0);
+		long s = j.getSequence();
+		record(j, 2);
+		assertEquals(s + 2, j.getSequence());
+		assertTrue(j.contains(s + 2));
+		assertFalse(j.contains(s + 1));
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.Name;
+import us.mn.state.dot.sonar.SonarObject;
+import us.mn.state.dot.sonar.TestObjImpl;
+
+/**
+ * Enumeration cursor test cases
+ *
+ * @author agent
+ */
+public class EnumerationCursorTest extends TestCase {
+
+	static private final Charset UTF8 = Charset.forName("UTF-8");
+
+	static private final String RS =
+		String.valueOf(Message.RECORD_SEP.code);
+
+	static private final String US = String.valueOf(Message.UNIT_SEP.code);
+
+	/** Deadline far in the future */
+	static private long later() {
+		return System.nanoTime() + 60000000000L;
+	}
+
+	/** Get the names of messages of one kind from an encoder */
+	static List<String> decode(MessageEncoder enc, Message m) {
+		ByteBuffer buf = enc.getBuffer();
+		String s = new String(buf.array(), 0, buf.position(), UTF8);
+		String code = String.valueOf(m.code);
+		List<String> names = new ArrayList<String>();
+		for(String r: s.split(RS)) {
+			String[] p = r.split(US, -1);
+			if(p[0].equals(code) && p.length > 1)
+				names.add(p[1]);
+		}
+		return names;
+	}
+
+	/** Create a namespace with test objects */
+	static ServerNamespace createNamespace(int n_objs) throws Exception {
+		ServerNamespace ns = new ServerNamespace();
+		for(int i = 0; i < n_objs; i++)
+			ns.addObject(new TestObjImpl("name_" + i, i));
+		return ns;
+	}
+
+	/** Test object name */
+	static private Name obj(int i) {
+		return new Name(TestObjImpl.SONAR_TYPE, "name_" + i);
+	}
+
+	/** SONAR namespace */
+	private final ServerNamespace ns;
+
+	/** Message encoder */
+	private final MessageEncoder enc;
+
+	/** constructor */
+	public EnumerationCursorTest(String name) throws Exception {
+		super(name);
+		ns = createNamespace(10);
+		enc = new MessageEncoder(0);
+	}
+
+	/** Objects are pending until the cursor reaches them */
+	public void testPending() throws Exception {
+		EnumerationCursor c = ns.createCursor(
+			new Name(TestObjImpl.SONAR_TYPE));
+		assertTrue(c.isPending(obj(0)));
+		assertTrue(c.isPending(obj(9)));
+		assertFalse(c.isPending(obj(10)));
+		assertFalse(c.isPending(new Name("other", "name_0")));
+		// A byte limit of 1 yields after each object
+		assertFalse(c.step(enc, later(), 1));
+		assertFalse(c.isPending(obj(0)));
+		assertTrue(c.isPending(obj(1)));
+		assertTrue(c.step(enc, later(), Integer.MAX_VALUE));
+		for(int i = 0; i < 10; i++)
+			assertFalse(c.isPending(obj(i)));
+		assertEquals(10, decode(enc, Message.OBJECT).size());
+	}
+
+	/** A pending object which is removed is not enumerated, and the
+	 * REMOVE notification is not needed */
+	public void testRemovePending() throws Exception {
+		EnumerationCursor c = ns.createCursor(
+			new Name(TestObjImpl.SONAR_TYPE));
+		assertFalse(c.step(enc, later(), 1));
+		assertTrue(c.checkRemove(obj(5)));
+		assertFalse(c.isPending(obj(5)));
+		assertFalse(c.checkRemove(obj(5)));
+		// Already enumerated, so the client needs the REMOVE
+		assertFalse(c.checkRemove(obj(0)));
+		assertTrue(c.step(enc, later(), Integer.MAX_VALUE));
+		List<String> objs = decode(enc, Message.OBJECT);
+		assertEquals(9, objs.size());
+		assertFalse(objs.contains("name_5"));
+		assertTrue(objs.contains("name_4"));
+	}
+
+	/** A type attribute enumeration has no pending objects, and skips
+	 * objects removed from the namespace */
+	public void testAttribute() throws Exception {
+		Name n = new Name(TestObjImpl.SONAR_TYPE, "", "notes");
+		EnumerationCursor c = ns.createCursor(n);
+		assertFalse(c.isPending(obj(3)));
+		assertFalse(c.checkRemove(obj(3)));
+		assertFalse(c.step(enc, later(), 1));
+		SonarObject o = ns.lookupObject(obj(3));
+		ns.removeObject(o);
+		assertTrue(c.step(enc, later(), Integer.MAX_VALUE));
+		List<String> attrs = decode(enc, Message.ATTRIBUTE);
+		assertEquals(9, attrs.size());
+		assertFalse(attrs.contains(new Name(o, "notes").toString()));
+		assertTrue(attrs.contains(new Name(TestObjImpl.SONAR_TYPE,
+			"name_4", "notes").toString()));
+	}
+}
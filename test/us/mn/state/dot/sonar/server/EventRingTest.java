@@ -0,0 +1,164 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import junit.framework.TestCase;
+
+/**
+ * Event ring test cases
+ *
+ * @author agent
+ */
+public class EventRingTest extends TestCase {
+
+	/** Post a named task event */
+	static private void post(EventRing ring, String n) {
+		EventRing.Slot s = ring.claim();
+		s.type = EventRing.Type.TASK;
+		s.name = n;
+		ring.publish(s);
+	}
+
+	/** Take an event, and get its name */
+	static private String take(EventRing ring) {
+		EventRing.Slot s = ring.take();
+		String n = s.name;
+		ring.release(s);
+		return n;
+	}
+
+	/** Post named events from another thread */
+	static private void postOther(final EventRing ring,
+		final String... names) throws Exception
+	{
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				for(String n: names)
+					post(ring, n);
+			}
+		};
+		t.start();
+		t.join(10000);
+		assertFalse(t.isAlive());
+	}
+
+	/** constructor */
+	public EventRingTest(String name) {
+		super(name);
+	}
+
+	/** Capacity is rounded up to a power of two */
+	public void testCapacity() {
+		assertEquals(2, new EventRing(0).getCapacity());
+		assertEquals(2, new EventRing(2).getCapacity());
+		assertEquals(4, new EventRing(3).getCapacity());
+		assertEquals(1024, new EventRing(1000).getCapacity());
+	}
+
+	/** Events are taken in order as the ring wraps around */
+	public void testWraparound() {
+		EventRing ring = new EventRing(4);
+		for(int r = 0; r < 10; r++) {
+			for(int i = 0; i < 3; i++)
+				post(ring, r + "." + i);
+			assertEquals(3, ring.getSize());
+			for(int i = 0; i < 3; i++)
+				assertEquals(r + "." + i, take(ring));
+			assertEquals(0, ring.getSize());
+		}
+		assertEquals(3, ring.getMaxSize());
+		assertEquals(0, ring.getFullCount());
+	}
+
+	/** A slot cannot be claimed without waiting while the ring is full */
+	public void testTryClaimFull() {
+		EventRing ring = new EventRing(2);
+		post(ring, "a");
+		EventRing.Slot s = ring.tryClaim();
+		assertNotNull(s);
+		s.name = "b";
+		ring.publish(s);
+		assertNull(ring.tryClaim());
+		assertEquals(1, ring.getFullCount());
+		assertEquals("a", take(ring));
+		s = ring.tryClaim();
+		assertNotNull(s);
+		s.name = "c";
+		ring.publish(s);
+		assertEquals("b", take(ring));
+		assertEquals("c", take(ring));
+		assertEquals(2, ring.getMaxSize());
+	}
+
+	/** A producer waits on a full ring until a slot is released */
+	public void testClaimFull() throws Exception {
+		final EventRing ring = new EventRing(2);
+		post(ring, "a");
+		post(ring, "b");
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				post(ring, "c");
+			}
+		};
+		t.start();
+		t.join(100);
+		assertTrue(t.isAlive());
+		assertEquals("a", take(ring));
+		t.join(10000);
+		assertFalse(t.isAlive());
+		assertEquals(1, ring.getFullCount());
+		assertEquals("b", take(ring));
+		assertEquals("c", take(ring));
+	}
+
+	/** Events posted by the consumer are taken after ring events which
+	 * were posted before them, and before later ring events */
+	public void testConsumerOrder() throws Exception {
+		EventRing ring = new EventRing(4);
+		ring.setConsumer(Thread.currentThread());
+		postOther(ring, "a", "b");
+		post(ring, "local1");
+		postOther(ring, "c");
+		post(ring, "local2");
+		assertEquals(3, ring.getSize());
+		assertEquals("a", take(ring));
+		assertEquals("b", take(ring));
+		assertEquals("local1", take(ring));
+		assertEquals("c", take(ring));
+		assertEquals("local2", take(ring));
+		// A consumer event is taken at once with the ring empty
+		post(ring, "local3");
+		assertEquals("local3", take(ring));
+	}
+
+	/** The consumer can post events while the ring is full */
+	public void testConsumerFull() throws Exception {
+		EventRing ring = new EventRing(2);
+		ring.setConsumer(Thread.currentThread());
+		postOther(ring, "a", "b");
+		post(ring, "local1");
+		EventRing.Slot s = ring.tryClaim();
+		assertNotNull(s);
+		s.name = "local2";
+		ring.publish(s);
+		assertEquals(0, ring.getFullCount());
+		assertEquals("a", take(ring));
+		assertEquals("b", take(ring));
+		assertEquals("local1", take(ring));
+		assertEquals("local2", take(ring));
+	}
+}
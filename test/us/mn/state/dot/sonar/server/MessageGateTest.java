@@ -0,0 +1,106 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.Message;
+
+/**
+ * Message gate test cases
+ *
+ * @author agent
+ */
+public class MessageGateTest extends TestCase {
+
+	/** Create message parameters */
+	static private List<String> params(String... p) {
+		return new ArrayList<String>(Arrays.asList(p));
+	}
+
+	/** constructor */
+	public MessageGateTest(String name) {
+		super(name);
+	}
+
+	/** A QUIT after an ATTRIBUTE waits until the update is complete */
+	public void testAttributeQuit() {
+		MessageGate gate = new MessageGate();
+		assertTrue(gate.pass(Message.ATTRIBUTE,
+			params("a", "testobj/name_A/notes", "x")));
+		assertFalse(gate.pass(Message.QUIT, params("q")));
+		assertNull(gate.release());
+		assertTrue(gate.complete());
+		MessageGate.Entry e = gate.release();
+		assertNotNull(e);
+		assertEquals(Message.QUIT, e.msg);
+		assertEquals(params("q"), e.params);
+		assertNull(gate.release());
+	}
+
+	/** Messages after a waiting message also wait, in order */
+	public void testLaterMessagesWait() {
+		MessageGate gate = new MessageGate();
+		List<String> p = params("a", "testobj/name_A/notes", "x");
+		assertTrue(gate.pass(Message.ATTRIBUTE, p));
+		assertFalse(gate.pass(Message.ENUMERATE, params("e", "testobj")));
+		assertFalse(gate.pass(Message.ATTRIBUTE, p));
+		assertFalse(gate.pass(Message.QUIT, params("q")));
+		assertTrue(gate.complete());
+		assertEquals(Message.ENUMERATE, gate.release().msg);
+		assertEquals(Message.ATTRIBUTE, gate.release().msg);
+		// QUIT waits for the second ATTRIBUTE
+		assertNull(gate.release());
+		assertTrue(gate.complete());
+		assertEquals(Message.QUIT, gate.release().msg);
+		assertNull(gate.release());
+	}
+
+	/** Waiting parameters are copied, since the decoder reuses them */
+	public void testParamsCopied() {
+		MessageGate gate = new MessageGate();
+		assertTrue(gate.pass(Message.OBJECT, params("o", "testobj/x")));
+		List<String> p = params("i", "testobj");
+		assertFalse(gate.pass(Message.IGNORE, p));
+		p.clear();
+		assertTrue(gate.complete());
+		assertEquals(params("i", "testobj"), gate.release().params);
+	}
+
+	/** Messages pass immediately with no updates pending */
+	public void testNoUpdates() {
+		MessageGate gate = new MessageGate();
+		assertTrue(gate.pass(Message.ENUMERATE, params("e", "")));
+		assertTrue(gate.pass(Message.ATTRIBUTE,
+			params("a", "testobj/name_A/notes", "x")));
+		assertTrue(gate.pass(Message.ATTRIBUTE,
+			params("a", "testobj/name_A/notes", "y")));
+		assertFalse(gate.complete());
+		assertFalse(gate.complete());
+		assertTrue(gate.pass(Message.QUIT, params("q")));
+	}
+
+	/** Cleared messages are not released */
+	public void testClear() {
+		MessageGate gate = new MessageGate();
+		assertTrue(gate.pass(Message.REMOVE, params("r", "testobj/x")));
+		assertFalse(gate.pass(Message.QUIT, params("q")));
+		gate.clear();
+		assertFalse(gate.complete());
+		assertNull(gate.release());
+	}
+}
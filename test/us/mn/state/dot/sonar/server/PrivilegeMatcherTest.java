@@ -0,0 +1,145 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ * Privilege matcher test cases
+ *
+ * @author agent
+ */
+public class PrivilegeMatcherTest extends TestCase {
+
+	/** Patterns to test (some are not supported by the automaton) */
+	static private final String[] PATTERNS = {
+		"",
+		".*",
+		"camera.*",
+		"camera/.*",
+		"camera/C00./notes",
+		"dms(/.*)?",
+		"dms/V1+/msg",
+		"(detector|station)/.*/name",
+		"((a)*b)+/x?y",
+		"user/[a-z]+",
+		"role/a*?",
+		"role/b*+",
+		"(bad",
+	};
+
+	/** Names to test */
+	static private final String[] NAMES = {
+		"",
+		"camera",
+		"camera/C001",
+		"camera/C001/notes",
+		"camera/C0012/notes",
+		"dms",
+		"dms/",
+		"dms/V1/msg",
+		"dms/V111/msg",
+		"dms/V/msg",
+		"detector/D1/name",
+		"station/S1/name",
+		"detectors/D1/name",
+		"ab/y",
+		"aabab/xy",
+		"b/xxy",
+		"user/doug",
+		"user/Doug",
+		"role/aaa",
+		"role/bb",
+		"caf\u00e9/\u2603",
+		"camera/a\nb",
+	};
+
+	/** constructor */
+	public PrivilegeMatcherTest(String name) {
+		super(name);
+	}
+
+	/** Check if a name matches any pattern using java.util.regex */
+	private boolean matchesRegex(List<String> patterns, String n) {
+		for(String p: patterns) {
+			try {
+				if(n.matches(p))
+					return true;
+			}
+			catch(RuntimeException e) {
+				// invalid pattern never matches
+			}
+		}
+		return false;
+	}
+
+	/** Check that a matcher agrees with java.util.regex */
+	private void checkPatterns(List<String> patterns) {
+		PrivilegeMatcher m = new PrivilegeMatcher(patterns);
+		for(String n: NAMES) {
+			// Check twice, to use cached transitions
+			for(int i = 0; i < 2; i++) {
+				assertEquals(patterns + " " + n,
+					matchesRegex(patterns, n), m.matches(n));
+			}
+		}
+	}
+
+	/** Test each pattern alone */
+	public void testSingle() {
+		for(String p: PATTERNS)
+			checkPatterns(Arrays.asList(p));
+	}
+
+	/** Test combinations of patterns */
+	public void testCombined() {
+		checkPatterns(new ArrayList<String>());
+		checkPatterns(Arrays.asList(PATTERNS));
+		for(int i = 1; i < PATTERNS.length; i++) {
+			checkPatterns(Arrays.asList(PATTERNS[i - 1],
+				PATTERNS[i]));
+		}
+	}
+
+	/** Test one matcher shared by several threads */
+	public void testThreads() throws InterruptedException {
+		final List<String> patterns = Arrays.asList(PATTERNS);
+		final PrivilegeMatcher m = new PrivilegeMatcher(patterns);
+		final AtomicInteger n_wrong = new AtomicInteger();
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for(int i = 0; i < 200; i++) {
+						for(String n: NAMES) {
+							if(m.matches(n) !=
+							   matchesRegex(patterns, n))
+								n_wrong.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t: threads)
+			t.join();
+		assertEquals(0, n_wrong.get());
+	}
+}
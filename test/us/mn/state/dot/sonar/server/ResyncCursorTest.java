@@ -0,0 +1,137 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import junit.framework.TestCase;
+import us.mn.state.dot.sonar.Message;
+import us.mn.state.dot.sonar.MessageEncoder;
+import us.mn.state.dot.sonar.Name;
+import us.mn.state.dot.sonar.TestObjImpl;
+
+/**
+ * Resync cursor test cases
+ *
+ * @author agent
+ */
+public class ResyncCursorTest extends TestCase {
+
+	/** Deadline far in the future */
+	static private long later() {
+		return System.nanoTime() + 60000000000L;
+	}
+
+	/** Test type name */
+	static private final Name TYPE = new Name(TestObjImpl.SONAR_TYPE);
+
+	/** SONAR namespace */
+	private final ServerNamespace ns;
+
+	/** User with read access to everything */
+	private final UserImpl user;
+
+	/** Message encoder */
+	private final MessageEncoder enc;
+
+	/** Changes to resync */
+	private final Map<String, Set<String>> changes =
+		new LinkedHashMap<String, Set<String>>();
+
+	/** constructor */
+	public ResyncCursorTest(String name) throws Exception {
+		super(name);
+		ns = EnumerationCursorTest.createNamespace(10);
+		CapabilityImpl c = new CapabilityImpl("admin");
+		c.setEnabled(true);
+		ns.addObject(c);
+		PrivilegeImpl p = new PrivilegeImpl("admin", c);
+		p.setPattern(".*");
+		p.setPrivR(true);
+		ns.addObject(p);
+		RoleImpl r = new RoleImpl("admin");
+		r.setCapabilities(new CapabilityImpl[] { c });
+		r.setEnabled(true);
+		ns.addObject(r);
+		user = new UserImpl("username");
+		user.setRole(r);
+		user.setEnabled(true);
+		ns.addObject(user);
+		enc = new MessageEncoder(0);
+		Set<String> notes = new LinkedHashSet<String>();
+		notes.add("notes");
+		changes.put("name_1", null);
+		changes.put("name_2", notes);
+		changes.put("name_3", null);
+		changes.put("gone", null);
+	}
+
+	/** Create a resync cursor for the changes */
+	private ResyncCursor createCursor() {
+		return new ResyncCursor(ns, TYPE, changes, user, null);
+	}
+
+	/** Changed objects, attributes and removed objects are encoded */
+	public void testChanges() throws Exception {
+		ResyncCursor c = createCursor();
+		assertTrue(c.step(enc, later(), Integer.MAX_VALUE));
+		List<String> objs = EnumerationCursorTest.decode(enc,
+			Message.OBJECT);
+		assertTrue(objs.contains("name_1"));
+		assertTrue(objs.contains("name_3"));
+		assertFalse(objs.contains("name_2"));
+		List<String> attrs = EnumerationCursorTest.decode(enc,
+			Message.ATTRIBUTE);
+		assertTrue(attrs.contains(new Name(TestObjImpl.SONAR_TYPE,
+			"name_2", "notes").toString()));
+		List<String> rem = EnumerationCursorTest.decode(enc,
+			Message.REMOVE);
+		assertEquals(1, rem.size());
+		assertEquals(new Name(TestObjImpl.SONAR_TYPE, "gone")
+			.toString(), rem.get(0));
+	}
+
+	/** Changed objects are never pending, so notifications for them
+	 * are always sent */
+	public void testNotPending() throws Exception {
+		ResyncCursor c = createCursor();
+		assertFalse(c.isPending(new Name(TestObjImpl.SONAR_TYPE,
+			"name_1")));
+		assertFalse(c.isPending(new Name(TestObjImpl.SONAR_TYPE,
+			"name_5")));
+	}
+
+	/** A changed object removed before the cursor reaches it is not
+	 * encoded, but the REMOVE notification is still needed */
+	public void testRemove() throws Exception {
+		ResyncCursor c = createCursor();
+		assertFalse(c.step(enc, later(), 1));
+		assertFalse(c.checkRemove(new Name(TestObjImpl.SONAR_TYPE,
+			"name_3")));
+		assertFalse(c.checkRemove(new Name("other", "name_2")));
+		assertTrue(c.step(enc, later(), Integer.MAX_VALUE));
+		List<String> objs = EnumerationCursorTest.decode(enc,
+			Message.OBJECT);
+		assertTrue(objs.contains("name_1"));
+		assertFalse(objs.contains("name_3"));
+		List<String> attrs = EnumerationCursorTest.decode(enc,
+			Message.ATTRIBUTE);
+		assertTrue(attrs.contains(new Name(TestObjImpl.SONAR_TYPE,
+			"name_2", "notes").toString()));
+	}
+}
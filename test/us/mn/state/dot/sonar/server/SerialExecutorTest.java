@@ -0,0 +1,164 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import junit.framework.TestCase;
+import us.mn.state.dot.sched.ExceptionHandler;
+
+/**
+ * Serial executor test cases
+ *
+ * @author agent
+ */
+public class SerialExecutorTest extends TestCase {
+
+	/** Exceptions passed to the handler */
+	private final List<Exception> handled = new ArrayList<Exception>();
+
+	/** Exception handler which records exceptions */
+	private final ExceptionHandler handler = new ExceptionHandler() {
+		public boolean handle(Exception e) {
+			synchronized(handled) {
+				handled.add(e);
+			}
+			return true;
+		}
+	};
+
+	/** Order in which tasks ran */
+	private final List<Integer> ran = new ArrayList<Integer>();
+
+	/** Single-thread worker pool */
+	private final WorkerPool pool =
+		new WorkerPool(1, "SerialExecutorTest-", handler);
+
+	/** constructor */
+	public SerialExecutorTest(String name) {
+		super(name);
+	}
+
+	/** Create a task which records that it ran */
+	private Runnable task(final int n) {
+		return new Runnable() {
+			public void run() {
+				synchronized(ran) {
+					ran.add(n);
+				}
+			}
+		};
+	}
+
+	/** Create a task which waits for a latch */
+	static private Runnable waitTask(final CountDownLatch latch) {
+		return new Runnable() {
+			public void run() {
+				try {
+					latch.await();
+				}
+				catch(InterruptedException e) {
+					// just finish
+				}
+			}
+		};
+	}
+
+	/** Create a task which counts down a latch */
+	static private Runnable doneTask(final CountDownLatch latch) {
+		return new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		};
+	}
+
+	/** Wait for a latch */
+	static private void await(CountDownLatch latch) throws Exception {
+		assertTrue(latch.await(10, TimeUnit.SECONDS));
+	}
+
+	/** Tasks run in submission order, whatever their work class */
+	public void testOrder() throws Exception {
+		SerialExecutor ex = new SerialExecutor(pool, handler);
+		CountDownLatch gate = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ex.execute(WorkClass.BULK, waitTask(gate));
+		ex.execute(WorkClass.BULK, task(1));
+		ex.execute(WorkClass.INTERACTIVE, task(2));
+		ex.execute(WorkClass.CONTROL, task(3));
+		ex.execute(WorkClass.BULK, task(4));
+		ex.execute(WorkClass.CONTROL, doneTask(done));
+		gate.countDown();
+		await(done);
+		assertEquals(Arrays.asList(1, 2, 3, 4), ran);
+		assertEquals(0, ex.getQueued());
+	}
+
+	/** Later tasks run after a task throws a RuntimeException */
+	public void testRuntimeException() throws Exception {
+		SerialExecutor ex = new SerialExecutor(pool, handler);
+		CountDownLatch gate = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ex.execute(waitTask(gate));
+		ex.execute(new Runnable() {
+			public void run() {
+				throw new IllegalStateException("test");
+			}
+		});
+		ex.execute(task(1));
+		ex.execute(doneTask(done));
+		gate.countDown();
+		await(done);
+		assertEquals(Arrays.asList(1), ran);
+		synchronized(handled) {
+			assertEquals(1, handled.size());
+			assertTrue(handled.get(0) instanceof
+				IllegalStateException);
+		}
+	}
+
+	/** Later tasks run after a task throws an Error, and the worker
+	 * thread keeps running tasks */
+	public void testError() throws Exception {
+		SerialExecutor ex = new SerialExecutor(pool, handler);
+		CountDownLatch gate = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(1);
+		ex.execute(waitTask(gate));
+		ex.execute(new Runnable() {
+			public void run() {
+				throw new Error("test");
+			}
+		});
+		ex.execute(task(1));
+		ex.execute(doneTask(done));
+		gate.countDown();
+		await(done);
+		CountDownLatch again = new CountDownLatch(1);
+		ex.execute(task(2));
+		ex.execute(doneTask(again));
+		await(again);
+		assertEquals(Arrays.asList(1, 2), ran);
+		synchronized(handled) {
+			assertEquals(1, handled.size());
+			assertTrue(handled.get(0) instanceof
+				ExecutionException);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * SONAR -- Simple Object Notification And Replication
+ * Copyright (C) 2026  Minnesota Department of Transportation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ */
+package us.mn.state.dot.sonar.server;
+
+import junit.framework.TestCase;
+
+/**
+ * Weighted queue test cases
+ *
+ * @author agent
+ */
+public class WeightedQueueTest extends TestCase {
+
+	/** Add items to the queue of a work class */
+	static private void add(WeightedQueue<String> q, WorkClass wc,
+		String p, int n)
+	{
+		for(int i = 0; i < n; i++)
+			q.add(wc, p + i);
+	}
+
+	/** Take items from the queue, and get the first letter of each */
+	static private String poll(WeightedQueue<String> q, int n) {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < n; i++)
+			sb.append(q.poll().charAt(0));
+		return sb.toString();
+	}
+
+	/** constructor */
+	public WeightedQueueTest(String name) {
+		super(name);
+	}
+
+	/** Each class gets turns according to its weight in each round */
+	public void testWeightedOrder() {
+		WeightedQueue<String> q = new WeightedQueue<String>();
+		add(q, WorkClass.BULK, "b", 10);
+		add(q, WorkClass.INTERACTIVE, "i", 10);
+		add(q, WorkClass.CONTROL, "c", 10);
+		assertEquals(30, q.size());
+		assertEquals("cccciib", poll(q, 7));
+		assertEquals("cccciib", poll(q, 7));
+		assertEquals(16, q.size());
+	}
+
+	/** Items of one class are taken in the order they were added */
+	public void testFifo() {
+		WeightedQueue<String> q = new WeightedQueue<String>();
+		add(q, WorkClass.INTERACTIVE, "i", 3);
+		add(q, WorkClass.BULK, "b", 1);
+		assertEquals("i0", q.poll());
+		assertEquals("i1", q.poll());
+		assertEquals("b0", q.poll());
+		assertEquals("i2", q.poll());
+		assertNull(q.poll());
+		assertTrue(q.isEmpty());
+	}
+
+	/** A bulk item is not starved by a steady supply of control items */
+	public void testStarvation() {
+		WeightedQueue<String> q = new WeightedQueue<String>();
+		add(q, WorkClass.BULK, "b", 1);
+		int n = WorkClass.CONTROL.weight + WorkClass.BULK.weight;
+		for(int i = 0; i < n; i++) {
+			q.add(WorkClass.CONTROL, "c");
+			if(q.poll().equals("b0"))
+				return;
+		}
+		fail("bulk item starved");
+	}
+
+	/** A class with nothing waiting gives up its turns */
+	public void testEmptyClass() {
+		WeightedQueue<String> q = new WeightedQueue<String>();
+		add(q, WorkClass.BULK, "b", 5);
+		assertEquals("bbbbb", poll(q, 5));
+		assertNull(q.poll());
+		assertEquals(0, q.size());
+	}
+}
@@ -33,6 +33,8 @@ public class TestServer {
 		p.setProperty("keystore.file", "sonar-test.keystore");
 		p.setProperty("keystore.password", "sonar-test");
 		p.setProperty("sonar.port", "1037");
+		p.setProperty("sonar.transport",
+			System.getProperty("sonar.transport", "nio"));
 		return p;
 	}
 